@@ -0,0 +1,78 @@
+package slicer;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/*
+ * The whole program analysis of the preprocessed class: the class hierarchy of its scope,
+ * and the call graph (of the default tier) over it. Both are built from scratch on every
+ * invocation, as they are by every run of FlagSlicer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AnalysisBenchmark {
+	@Param({ "1", "10", "100" })
+	int size;
+
+	BenchFixture fixture;
+	ClassOverlay overlay;
+	AnalysisScope scope;
+	SliceAnalysis analysis;
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = BenchFixture.create(size);
+		overlay = fixture.preprocess();
+		scope = SliceAnalysis.makeScope(overlay.getJarPath(), overlay, FlagSlicer.getExclusionsFile(), null);
+	}
+
+	// the call graph is built over a new analysis, whose class hierarchy isn't measured
+	@Setup(Level.Invocation)
+	public void setUpAnalysis() throws Exception {
+		analysis = new SliceAnalysis(overlay.getJarPath(), overlay, FlagSlicer.getExclusionsFile(),
+				"L" + fixture.packageName + "/" + fixture.className);
+	}
+
+	@TearDown(Level.Invocation)
+	public void tearDownAnalysis() throws Exception {
+		analysis.close();
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		SliceAnalysis.closeScope(scope);
+		fixture.delete();
+	}
+
+	@Benchmark
+	public IClassHierarchy classHierarchy() throws Exception {
+		return ClassHierarchy.make(scope);
+	}
+
+	@Benchmark
+	public CallGraph callGraph() throws Exception {
+		return analysis.getCallGraph();
+	}
+}
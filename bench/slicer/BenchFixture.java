@@ -0,0 +1,118 @@
+package slicer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * The subject of the benchmarks: the method example.Test.foo, sliced by its parameter flag.
+ * Size 1 is src/example as it is. A bigger size repeats the body of foo that many times
+ * (every copy with its own locals, branches on the flag and a call to a helper method of its
+ * own), so the method, its IR and its slice grow linearly with the size.
+ * The benchmarks aren't part of a build: they are compiled with the sources of src/slicer
+ * against WALA, JavaParser, commons-cli and JMH (with its annotation processor), and run by
+ * org.openjdk.jmh.Main from the root of the repository, which EXAMPLE_DIR is relative to.
+ */
+public class BenchFixture {
+	static final String EXAMPLE_DIR = "src/example";
+
+	String jarPath;
+	// the directory the fixture was generated in, null for src/example
+	File generatedDir;
+	String jarName = "test.jar";
+	String fileName = "Test.java";
+	String packageName = "example";
+	String className = "Test";
+	String methodName = "foo";
+	String flagName = "flag";
+
+	private BenchFixture(String jarPath) {
+		this.jarPath = jarPath;
+	}
+
+	/*
+	 * The fixture of the given size, generated in a temporary directory if the size is above 1.
+	 * The directory is deleted by delete.
+	 */
+	public static BenchFixture create(int size) throws IOException {
+		if (size <= 1) {
+			return new BenchFixture(new File(EXAMPLE_DIR).getAbsolutePath());
+		}
+		File dir = Files.createTempDirectory("flagslicer-bench-" + size).toFile();
+		try {
+			String source = generateSource(size);
+			Files.write(new File(dir, "Test.java").toPath(), source.getBytes(StandardCharsets.UTF_8));
+			Map<String, byte[]> classes = new InMemoryCompiler().compile("example/Test.java", source, null);
+			WorkloadGenerator.writeJar(new File(dir, "test.jar"), classes, Collections.singletonMap("example/Test.java", source));
+		} catch (IOException | RuntimeException e) {
+			delete(dir);
+			throw e;
+		}
+		BenchFixture fixture = new BenchFixture(dir.getAbsolutePath());
+		fixture.generatedDir = dir;
+		return fixture;
+	}
+
+	// deletes the generated fixture, src/example is kept
+	public void delete() {
+		if (generatedDir != null) {
+			delete(generatedDir);
+		}
+	}
+
+	static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	static String generateSource(int size) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package example;\n\npublic class Test {\n\n");
+		sb.append("\tpublic static boolean foo(int cd, boolean flag) {\n");
+		sb.append("\t\tint b = 0;\n");
+		for (int k = 0; k < size; ++k) {
+			sb.append("\t\tint de" + k + " = " + k + " + 4;\n");
+			sb.append("\t\tSystem.out.println(cd + de" + k + ");\n");
+			sb.append("\t\tint a" + k + " = 1;\n");
+			sb.append("\t\tif(flag) {\n");
+			sb.append("\t\t\tb = a" + k + " * 2 + cd;\n");
+			sb.append("\t\t\tint c" + k + " = a" + k + " + b;\n");
+			sb.append("\t\t\tSystem.out.println(\"flag is true \" + c" + k + ");\n");
+			sb.append("\t\t} else {\n");
+			sb.append("\t\t\tSystem.out.println(\"flag is false\");\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\tb = step" + k + "(b);\n");
+		}
+		sb.append("\t\tb *= 5;\n");
+		sb.append("\t\tSystem.out.println(b);\n");
+		sb.append("\t\treturn true;\n");
+		sb.append("\t}\n\n");
+		for (int k = 0; k < size; ++k) {
+			sb.append("\tstatic int step" + k + "(int x) {\n");
+			sb.append("\t\treturn x + " + k + ";\n");
+			sb.append("\t}\n\n");
+		}
+		sb.append("\tpublic static void main(String args[]) {\n");
+		sb.append("\t\tfoo(3, false);\n");
+		sb.append("\t}\n}\n");
+		return sb.toString();
+	}
+
+	public FlagSlicer makeSlicer() {
+		return new FlagSlicer(jarPath, jarName, fileName, packageName, className, methodName, flagName, null);
+	}
+
+	// the preprocessed class of the fixture, as FlagSlicer.sliceMethod preprocesses it
+	public ClassOverlay preprocess() throws Exception {
+		return new JavaCodeTransformer().Preprocess(jarPath, FlagSlicer.removeExtension(jarName),
+				FlagSlicer.removeExtension(fileName), className, methodName, flagName, FlagSlicer.helperName(flagName));
+	}
+}
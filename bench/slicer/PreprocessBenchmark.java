@@ -0,0 +1,83 @@
+package slicer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.classLoader.Module;
+
+/*
+ * The preprocessing phases of a slice: parsing the source and adding the flag helper to it,
+ * compiling the changed source, and building the overlay module that replaces the update of
+ * the jar.
+ *
+ * The benchmarks are compiled together with src, against the WALA, JavaParser and
+ * commons-cli jars and against jmh-core and jmh-generator-annprocess (1.x), and are run
+ * from the root of the project (the exclusions file is read from src/slicer):
+ *   java -cp <classes and jars> org.openjdk.jmh.Main slicer.*Benchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PreprocessBenchmark {
+	// the number of copies of the body of example.Test.foo (1 is example.Test itself)
+	@Param({ "1", "10", "100" })
+	int size;
+
+	BenchFixture fixture;
+	Map<String, String> methodHelpers;
+	String changedSource;
+	ClassOverlay overlay;
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = BenchFixture.create(size);
+		methodHelpers = Collections.singletonMap(fixture.methodName, FlagSlicer.helperName(fixture.flagName));
+		changedSource = new JavaCodeTransformer().transform(fixture.jarPath, FlagSlicer.removeExtension(fixture.fileName),
+				fixture.className, methodHelpers);
+		overlay = fixture.preprocess();
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.delete();
+	}
+
+	private String getJarFile() {
+		return fixture.jarPath + File.separator + fixture.jarName;
+	}
+
+	@Benchmark
+	public String parseAndTransform() throws Exception {
+		return new JavaCodeTransformer().transform(fixture.jarPath, FlagSlicer.removeExtension(fixture.fileName),
+				fixture.className, methodHelpers);
+	}
+
+	@Benchmark
+	public Map<String, byte[]> compile() throws Exception {
+		return new InMemoryCompiler().compile(fixture.packageName + "/" + fixture.fileName, changedSource, getJarFile());
+	}
+
+	// the changed classes are no longer patched into a copy of the jar, they are read from an overlay
+	@Benchmark
+	public Module buildOverlayModule() throws Exception {
+		return overlay.toModule();
+	}
+}
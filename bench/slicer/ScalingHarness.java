@@ -0,0 +1,178 @@
+package slicer;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Runs FlagSlicer.sliceMethod end to end over generated workloads of growing size, and
+ * reports the time and the peak heap of every phase as CSV:
+ *   java slicer.ScalingHarness <csv file> [size ...] [setting=value ...]
+ * A workload of size s has s * classesPerSize classes (see WorkloadGenerator), and the other
+ * settings (methods, flags, nestingDepth, callDepth, heapTraffic, classesPerSize) can be
+ * given as setting=value. The code grows linearly with the size, so a phase whose time grows
+ * faster than the generated lines (by an exponent above SUPERLINEAR_EXPONENT) is flagged.
+ * The phases are the ones sliceMethod measures (see SliceMetrics): preprocess, classHierarchy
+ * (building the analysis), callGraph, seeds, slice, lines and write. The peak heap of a phase
+ * is the sum of the peaks of the heap pools while it ran. The total is the whole of
+ * sliceMethod, after a full GC, and its peak heap is the highest of the phases.
+ * The smallest workload is sliced once before the sweep, so that the first size isn't
+ * measured on a cold JVM. Run it from the root of the project.
+ */
+public class ScalingHarness {
+	static final double SUPERLINEAR_EXPONENT = 1.2;
+	// phases shorter than this are too noisy to be flagged
+	static final long MIN_FLAGGED_MILLIS = 20;
+	static final String[] PHASES = { "preprocess", "classHierarchy", "callGraph", "seeds", "slice", "lines", "write",
+			"total" };
+
+	Map<String, Integer> settings = new HashMap<String, Integer>();
+	// the time of every phase at the previous size, and the lines of that size
+	Map<String, Long> previousMillis = new HashMap<String, Long>();
+	int previousLines;
+	int generatedLines;
+	long phaseStart;
+
+	ScalingHarness() {
+		settings.put("classesPerSize", 4);
+		settings.put("methods", 4);
+		settings.put("flags", 2);
+		settings.put("nestingDepth", 3);
+		settings.put("callDepth", 4);
+		settings.put("heapTraffic", 2);
+	}
+
+	private static class PhaseResult {
+		long millis;
+		long peakHeapBytes;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("usage: ScalingHarness <csv file> [size ...] [setting=value ...]");
+			System.exit(1);
+		}
+		ScalingHarness harness = new ScalingHarness();
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (int i = 1; i < args.length; ++i) {
+			int eq = args[i].indexOf('=');
+			if (eq == -1) {
+				sizes.add(Integer.parseInt(args[i]));
+			} else if (harness.settings.containsKey(args[i].substring(0, eq))) {
+				harness.settings.put(args[i].substring(0, eq), Integer.parseInt(args[i].substring(eq + 1)));
+			} else {
+				System.err.println("unknown setting: " + args[i]);
+				System.exit(1);
+			}
+		}
+		if (sizes.isEmpty()) {
+			for (int s = 1; s <= 32; s *= 2) {
+				sizes.add(s);
+			}
+		}
+		harness.run(sizes, new File(args[0]));
+	}
+
+	private WorkloadGenerator makeGenerator(int size) {
+		return new WorkloadGenerator(size * settings.get("classesPerSize"), settings.get("methods"),
+				settings.get("flags"), settings.get("nestingDepth"), settings.get("callDepth"), settings.get("heapTraffic"));
+	}
+
+	void run(List<Integer> sizes, File csvFile) throws Exception {
+		System.err.println("warming up");
+		runPhases(makeGenerator(sizes.get(0)));
+
+		boolean superlinear = false;
+		try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(csvFile.toPath(), StandardCharsets.UTF_8))) {
+			csv.println("size,classes,lines,phase,millis,peakHeapMB,exponent,superlinear");
+			for (int size : sizes) {
+				WorkloadGenerator generator = makeGenerator(size);
+				System.err.println("slicing size " + size + " (" + generator.classes + " classes)");
+				Map<String, PhaseResult> results = runPhases(generator);
+				int lines = generatedLines;
+				for (String phase : PHASES) {
+					PhaseResult result = results.get(phase);
+					Long before = previousMillis.get(phase);
+					String exponent = "";
+					boolean flagged = false;
+					if (before != null && before > 0 && result.millis > 0 && lines > previousLines) {
+						double e = Math.log((double) result.millis / before) / Math.log((double) lines / previousLines);
+						exponent = String.format("%.2f", e);
+						flagged = e > SUPERLINEAR_EXPONENT && result.millis >= MIN_FLAGGED_MILLIS;
+					}
+					if (flagged) {
+						System.err.println("super-linear scaling of " + phase + " at size " + size + ": exponent " + exponent);
+						superlinear = true;
+					}
+					csv.println(size + "," + generator.classes + "," + lines + "," + phase + "," + result.millis + "," +
+							result.peakHeapBytes / (1024 * 1024) + "," + exponent + "," + flagged);
+					previousMillis.put(phase, result.millis);
+				}
+				csv.flush();
+				previousLines = lines;
+			}
+		}
+		System.err.println("wrote " + csvFile + (superlinear ? " (some phases scale super-linearly)" : ""));
+	}
+
+	// slices the generated workload with sliceMethod, and collects the phases it measured
+	private Map<String, PhaseResult> runPhases(WorkloadGenerator generator) throws Exception {
+		File dir = Files.createTempDirectory("flagslicer-workload").toFile();
+		try {
+			generatedLines = generator.generate(dir);
+			FlagSlicer slicer = generator.makeSlicer(dir, "flag0", new File(dir, "slice.txt").getPath());
+			slicer.metrics.setMeasureHeap(true);
+			startPhase();
+			slicer.sliceMethod();
+			PhaseResult total = endPhase();
+
+			Map<String, PhaseResult> results = new LinkedHashMap<String, PhaseResult>();
+			for (String phase : PHASES) {
+				results.put(phase, new PhaseResult());
+			}
+			for (SliceMetrics.Phase phase : slicer.metrics.phases) {
+				PhaseResult result = results.get(phase.name);
+				if (result != null) {
+					result.millis += phase.wallNanos / 1000000;
+					result.peakHeapBytes = Math.max(result.peakHeapBytes, phase.peakHeapBytes);
+				}
+				// the phases reset the peaks of the pools, so the peak of the total is only that of the last one
+				total.peakHeapBytes = Math.max(total.peakHeapBytes, phase.peakHeapBytes);
+			}
+			results.put("total", total);
+			return results;
+		} finally {
+			BenchFixture.delete(dir);
+		}
+	}
+
+	private void startPhase() {
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		phaseStart = System.nanoTime();
+	}
+
+	private PhaseResult endPhase() {
+		PhaseResult result = new PhaseResult();
+		result.millis = (System.nanoTime() - phaseStart) / 1000000;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				result.peakHeapBytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return result;
+	}
+}
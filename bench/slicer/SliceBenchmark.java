@@ -0,0 +1,120 @@
+package slicer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.util.strings.Atom;
+
+/*
+ * The phases of a slice that follow the analysis: the backward slice of the seeds of the
+ * flag over the SDG, the mapping of the sliced statements to source lines, and the
+ * writing of the lines (to a writer that discards them). The call graph and the SDG are built once, so the slicing
+ * benchmark measures the slices of an analysis that is already resident.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SliceBenchmark {
+	@Param({ "1", "10", "100" })
+	int size;
+
+	BenchFixture fixture;
+	FlagSlicer slicer;
+	@SuppressWarnings("rawtypes")
+	SDG sdg;
+	List<Statement> seeds;
+	Map<CGNode, BitSet> instructions;
+	Map<String, BitSet> slices;
+	Writer discard = new Writer() {
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	};
+
+	@Setup
+	public void setUp() throws Exception {
+		fixture = BenchFixture.create(size);
+		slicer = fixture.makeSlicer();
+		slicer.computeSlice(fixture.preprocess());
+		SliceAnalysis analysis = slicer.getAnalysis();
+		sdg = analysis.getSDG(DataDependenceOptions.FULL, ControlDependenceOptions.NONE);
+
+		// the seeds of the flag, as FlagSlicer collects them
+		CGNode node = FlagSlicer.findMethod(analysis.getCallGraph(), Atom.findOrCreateUnicodeAtom(fixture.methodName));
+		seeds = new ArrayList<Statement>();
+		Set<Integer> seeded = new HashSet<Integer>();
+		for (FlagSlicer.FlagSeeds flag : slicer.collectSeeds(node.getMethod(), node.getIR())) {
+			List<SSAInstruction> instructions = new ArrayList<SSAInstruction>(flag.branchInstructions);
+			instructions.addAll(flag.funcEnd);
+			for (SSAInstruction s : instructions) {
+				if (seeded.add(s.iindex)) {
+					seeds.add(new NormalStatement(node, s.iindex));
+				}
+			}
+		}
+		BitSet allSeeds = new BitSet();
+		allSeeds.set(0, seeds.size());
+		instructions = new MultiSeedSlicer(sdg).computeBackwardSlice(seeds).getInstructions(allSeeds);
+		slices = Collections.singletonMap(slicer.flagName, slicer.gatherSlicedLines(instructions));
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		slicer.getAnalysis().close();
+		fixture.delete();
+	}
+
+	@Benchmark
+	public MultiSeedSlicer.SliceResult slice() throws Exception {
+		return new MultiSeedSlicer(sdg).computeBackwardSlice(seeds);
+	}
+
+	@Benchmark
+	public BitSet gatherSlicedLines() {
+		return slicer.gatherSlicedLines(instructions);
+	}
+
+	@Benchmark
+	public void writeSlice() throws IOException {
+		slicer.writeSlices(new SliceWriter(discard, slicer.srcFileLines, null), slices);
+	}
+}
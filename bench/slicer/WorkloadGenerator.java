@@ -0,0 +1,186 @@
+package slicer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+/*
+ * Generates compilable jars of synthetic code to slice, in the package workload:
+ *   - classes: the classes C0 ... Cn-1. Each has the instance methods m0 ... mk-1
+ *     (methods of them), that take the flags as boolean parameters.
+ *   - flags: the boolean parameters of every method, flag0 ... flagf-1.
+ *   - nestingDepth: every method nests that many branches on its flags (cycling through them).
+ *   - callDepth: the length of the chains of calls between classes. The method mj of Ci calls
+ *     mj of Ci+1, unless Ci ends a chain.
+ *   - heapTraffic: the number of arrays every method allocates, and writes to and reads from
+ *     the fields of its object.
+ * The subject of the slice is the static method foo(int cd, boolean flag0, ...) of C0, whose
+ * branches on the flags call the methods of the heads of all the chains, so every method is
+ * reachable from main. Every class is in a file of its own, and the jar holds the source of
+ * C0 next to its class. The generated code only grows linearly with every setting.
+ */
+public class WorkloadGenerator {
+	static final String PACKAGE = "workload";
+	static final String SUBJECT_CLASS = "C0";
+	static final String SUBJECT_METHOD = "foo";
+
+	int classes = 1;
+	int methods = 1;
+	int flags = 1;
+	int nestingDepth = 1;
+	int callDepth = 1;
+	int heapTraffic = 1;
+
+	public WorkloadGenerator(int classes, int methods, int flags, int nestingDepth, int callDepth, int heapTraffic) {
+		this.classes = Math.max(1, classes);
+		this.methods = Math.max(1, methods);
+		this.flags = Math.max(1, flags);
+		this.nestingDepth = Math.max(0, nestingDepth);
+		this.callDepth = Math.max(1, callDepth);
+		this.heapTraffic = Math.max(0, heapTraffic);
+	}
+
+	/*
+	 * Writes the jar (workload.jar) and the source of the subject (C0.java) to dir, and
+	 * returns the number of generated source lines.
+	 */
+	public int generate(File dir) throws IOException {
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		for (int i = 0; i < classes; ++i) {
+			sources.put(PACKAGE + "/C" + i + ".java", generateClass(i));
+		}
+		Map<String, byte[]> compiled = new InMemoryCompiler().compile(sources, null);
+
+		String subject = sources.get(PACKAGE + "/" + SUBJECT_CLASS + ".java");
+		Files.write(new File(dir, SUBJECT_CLASS + ".java").toPath(), subject.getBytes(StandardCharsets.UTF_8));
+		writeJar(new File(dir, PACKAGE + ".jar"), compiled,
+				Collections.singletonMap(PACKAGE + "/" + SUBJECT_CLASS + ".java", subject));
+
+		int lines = 0;
+		for (String source : sources.values()) {
+			lines += source.split("\n").length;
+		}
+		return lines;
+	}
+
+	// a jar of the given classes (by binary name) and source files (by entry name)
+	static void writeJar(File jar, Map<String, byte[]> classes, Map<String, String> sources) throws IOException {
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				out.putNextEntry(new JarEntry(entry.getKey().replace('.', '/') + ".class"));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+			for (Map.Entry<String, String> entry : sources.entrySet()) {
+				out.putNextEntry(new JarEntry(entry.getKey()));
+				out.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+	}
+
+	public FlagSlicer makeSlicer(File dir, String flagName, String outputPath) {
+		return new FlagSlicer(dir.getAbsolutePath(), PACKAGE + ".jar", SUBJECT_CLASS + ".java", PACKAGE,
+				SUBJECT_CLASS, SUBJECT_METHOD, flagName, outputPath);
+	}
+
+	private String flagParameters() {
+		StringBuilder sb = new StringBuilder();
+		for (int f = 0; f < flags; ++f) {
+			sb.append(", boolean flag" + f);
+		}
+		return sb.toString();
+	}
+
+	private String flagArguments() {
+		StringBuilder sb = new StringBuilder();
+		for (int f = 0; f < flags; ++f) {
+			sb.append(", flag" + f);
+		}
+		return sb.toString();
+	}
+
+	// does the class call the methods of the next class
+	private boolean callsNext(int i) {
+		return i + 1 < classes && (i + 1) % callDepth != 0;
+	}
+
+	private String generateClass(int i) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("package " + PACKAGE + ";\n\n");
+		sb.append("public class C" + i + " {\n");
+		sb.append("\tint[] data = new int[16];\n");
+		sb.append("\tint total;\n\n");
+		if (i == 0) {
+			generateSubject(sb);
+		}
+		for (int j = 0; j < methods; ++j) {
+			generateMethod(sb, i, j);
+		}
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	private void generateSubject(StringBuilder sb) {
+		sb.append("\tpublic static boolean " + SUBJECT_METHOD + "(int cd" + flagParameters() + ") {\n");
+		sb.append("\t\tint result = cd;\n");
+		int call = 0;
+		for (int head = 0; head < classes; head += callDepth) {
+			for (int j = 0; j < methods; ++j, ++call) {
+				sb.append("\t\tint r" + call + " = " + call + ";\n");
+				sb.append("\t\tif(flag" + (call % flags) + ") {\n");
+				sb.append("\t\t\tr" + call + " = new C" + head + "().m" + j + "(cd" + flagArguments() + ");\n");
+				sb.append("\t\t} else {\n");
+				sb.append("\t\t\tSystem.out.println(\"skipped " + call + "\");\n");
+				sb.append("\t\t}\n");
+				sb.append("\t\tresult += r" + call + ";\n");
+			}
+		}
+		sb.append("\t\tSystem.out.println(result);\n");
+		sb.append("\t\treturn result > 0;\n");
+		sb.append("\t}\n\n");
+		sb.append("\tpublic static void main(String args[]) {\n");
+		StringBuilder args = new StringBuilder();
+		for (int f = 0; f < flags; ++f) {
+			args.append(f % 2 == 0 ? ", true" : ", false");
+		}
+		sb.append("\t\t" + SUBJECT_METHOD + "(args.length" + args + ");\n");
+		sb.append("\t}\n\n");
+	}
+
+	private void generateMethod(StringBuilder sb, int i, int j) {
+		sb.append("\tpublic int m" + j + "(int x" + flagParameters() + ") {\n");
+		sb.append("\t\tint v = x + " + j + ";\n");
+		String indent = "\t\t";
+		for (int d = 0; d < nestingDepth; ++d) {
+			sb.append(indent + "if(flag" + (d % flags) + ") {\n");
+			indent += "\t";
+			sb.append(indent + "v = v * 2 + " + d + ";\n");
+		}
+		if (callsNext(i)) {
+			sb.append(indent + "v += new C" + (i + 1) + "().m" + j + "(v" + flagArguments() + ");\n");
+		}
+		for (int d = nestingDepth - 1; d >= 0; --d) {
+			indent = indent.substring(1);
+			sb.append(indent + "} else {\n");
+			sb.append(indent + "\tv = v - " + d + ";\n");
+			sb.append(indent + "}\n");
+		}
+		for (int h = 0; h < heapTraffic; ++h) {
+			sb.append("\t\tint[] buf" + h + " = new int[4];\n");
+			sb.append("\t\tbuf" + h + "[" + (h % 4) + "] = v;\n");
+			sb.append("\t\tdata[" + (h % 16) + "] += buf" + h + "[" + (h % 4) + "];\n");
+			sb.append("\t\ttotal += data[" + ((h + 1) % 16) + "];\n");
+			sb.append("\t\tv += total;\n");
+		}
+		sb.append("\t\treturn v;\n");
+		sb.append("\t}\n\n");
+	}
+}
@@ -0,0 +1,257 @@
+package slicer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.javaparser.ParseException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/*
+ * Slices many (class, method, flag) queries in a single run.
+ * Queries are grouped by jar, source file and entrypoint class. Each group is preprocessed
+ * once (all of its methods are changed together), and the analysis of the group - the class
+ * hierarchy, call graph and pointer analysis - is built once and shared by all of its queries.
+ * Every query is written to its own output file.
+ *
+ * Manifest format - one query per line, fields separated by tabs:
+ *   jarPath jarFileName fileName packageName className methodName flagName outputPath
+ * so that paths may hold spaces. A line without tabs may separate its fields by any
+ * whitespace instead (and then they can't hold spaces).
+ * A flagName of '*' slices the method by all of its boolean parameters.
+ * Empty lines and lines starting with '#' are ignored.
+ */
+public class BatchSlicer {
+	public static class Query {
+		String jarPath;
+		String jarName;
+		String fileName;
+		String packageName;
+		String className;
+		String methodName;
+		String flagName;
+		String outputPath;
+
+		public Query(String jarPath, String jarName, String fileName, String packageName,
+				String className, String methodName, String flagName, String outputPath) {
+			this.jarPath = jarPath;
+			this.jarName = jarName;
+			this.fileName = fileName;
+			this.packageName = packageName;
+			this.className = className;
+			this.methodName = methodName;
+			this.flagName = flagName;
+			this.outputPath = outputPath;
+		}
+
+		// the line of the query in a manifest
+		String toManifestLine() {
+			return jarPath + "\t" + jarName + "\t" + fileName + "\t" + packageName + "\t" + className + "\t" +
+					methodName + "\t" + flagName + "\t" + outputPath;
+		}
+
+		String groupKey() {
+			return jarPath + "|" + jarName + "|" + fileName + "|" + packageName + "|" + className;
+		}
+
+		FlagSlicer makeSlicer() {
+			return new FlagSlicer(jarPath, jarName, fileName, packageName, className,
+					methodName, flagName, outputPath);
+		}
+
+		@Override
+		public String toString() {
+			return packageName + "." + className + "." + methodName + " (" + flagName + ")";
+		}
+	}
+
+	private static final int QUERY_FIELDS = 8;
+
+	SliceCache cache;
+	List<Query> queries = new ArrayList<Query>();
+	boolean localMode;
+	boolean bytecodeMode;
+	File primordialSnapshot;
+	// the number of queries of a group that are sliced concurrently
+	int parallelism = 1;
+	CallGraphTier maxTier = CallGraphTier.DEFAULT;
+	long timeBudgetMillis;
+	long heapBudgetBytes;
+	boolean writeMetrics;
+	long memoWeight = SliceMemo.DEFAULT_MAX_WEIGHT;
+	long memoryBudgetBytes;
+
+	public BatchSlicer(SliceCache cache) {
+		this.cache = cache;
+	}
+
+	public void setLocalMode(boolean local) {
+		localMode = local;
+	}
+
+	public void setBytecodeMode(boolean bytecode) {
+		bytecodeMode = bytecode;
+	}
+
+	public void setPrimordialSnapshot(File snapshot) {
+		primordialSnapshot = snapshot;
+	}
+
+	public void setParallelism(int workers) {
+		parallelism = workers;
+	}
+
+	public void setPrecision(CallGraphTier tier, long timeBudget, long heapBudget) {
+		maxTier = tier;
+		timeBudgetMillis = timeBudget;
+		heapBudgetBytes = heapBudget;
+	}
+
+	public void setMemoWeight(long weight) {
+		memoWeight = weight;
+	}
+
+	public void setMemoryBudget(long budgetBytes) {
+		memoryBudgetBytes = budgetBytes;
+	}
+
+	public void setWriteMetrics(boolean write) {
+		writeMetrics = write;
+	}
+
+	public void addQuery(Query query) {
+		queries.add(query);
+	}
+
+	// reads the queries from the manifest file, or from stdin if the path is "-"
+	public void readManifest(String manifestPath) throws IOException {
+		InputStream in = manifestPath.equals("-") ? System.in : new FileInputStream(manifestPath);
+		BufferedReader br = new BufferedReader(new InputStreamReader(in, Charset.forName("UTF-8")));
+		try {
+			String line;
+			int lineNum = 0;
+			while ((line = br.readLine()) != null) {
+				++lineNum;
+				if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.indexOf('\t') != -1 ? line.split("\t", -1) : line.trim().split("\\s+");
+				if (fields.length != QUERY_FIELDS) {
+					throw new IOException("malformed query in line " + lineNum + " of " + manifestPath +
+							": expected " + QUERY_FIELDS + " fields but found " + fields.length);
+				}
+				addQuery(new Query(fields[0], fields[1], fields[2], fields[3], fields[4],
+						fields[5], fields[6], fields[7]));
+			}
+		} finally {
+			if (in != System.in) {
+				br.close();
+			}
+		}
+	}
+
+	// returns false if any of the queries failed
+	public boolean sliceAll() {
+		Map<String, List<Query>> groups = new LinkedHashMap<String, List<Query>>();
+		for (Query q : queries) {
+			List<Query> group = groups.get(q.groupKey());
+			if (group == null) {
+				group = new ArrayList<Query>();
+				groups.put(q.groupKey(), group);
+			}
+			group.add(q);
+		}
+
+		boolean success = true;
+		for (List<Query> group : groups.values()) {
+			success &= sliceGroup(group);
+		}
+		return success;
+	}
+
+	private boolean sliceGroup(List<Query> group) {
+		Query first = group.get(0);
+		FlagSlicer.progress("slicing " + group.size() + " queries of " + first.packageName + "." + first.className);
+
+		// every changed method gets a single helper, named after its first flag
+		Map<String, String> methodHelpers = new LinkedHashMap<String, String>();
+		for (Query q : group) {
+			if (!methodHelpers.containsKey(q.methodName)) {
+				methodHelpers.put(q.methodName, FlagSlicer.helperName(q.flagName));
+			}
+		}
+
+		// no transformer is needed when the helper is added to the bytecode
+		JavaCodeTransformer codeTrs = null;
+		ClassOverlay preprocessed;
+		try {
+			if (bytecodeMode) {
+				preprocessed = new BytecodeInstrumenter().instrument(first.jarPath, FlagSlicer.removeExtension(first.jarName),
+						FlagSlicer.removeExtension(first.fileName), first.packageName, first.className, methodHelpers.keySet());
+			} else {
+				codeTrs = new JavaCodeTransformer();
+				preprocessed = codeTrs.Preprocess(first.jarPath, FlagSlicer.removeExtension(first.jarName),
+						FlagSlicer.removeExtension(first.fileName), first.className, methodHelpers);
+			}
+		} catch (ParseException | IOException e) {
+			System.err.println("Error: can't preprocess " + first.fileName + ": " + e.getMessage());
+			return false;
+		}
+
+		// a memory bounded analysis releases its IRs and SDGs, which concurrent slices would rebuild over and over
+		if (parallelism > 1 && memoryBudgetBytes > 0) {
+			System.err.println("slicing the queries of " + first.fileName + " one at a time to stay within the memory budget");
+		} else if (parallelism > 1) {
+			List<FlagSlicer> slicers = new ArrayList<FlagSlicer>();
+			for (Query q : group) {
+				slicers.add(makeSlicer(q, methodHelpers.keySet()));
+			}
+			return new ParallelSlicer(parallelism).sliceAll(codeTrs, preprocessed, slicers);
+		}
+
+		boolean success = true;
+		SliceAnalysis analysis = null;
+		try {
+			for (Query q : group) {
+				FlagSlicer slicer = makeSlicer(q, methodHelpers.keySet());
+				slicer.setAnalysis(analysis);
+				try {
+					slicer.slicePreprocessed(codeTrs, preprocessed);
+				} catch (ClassHierarchyException | IOException | CancelException | FlagSlicer.InvalidFlagException e) {
+					System.err.println("Error: can't slice " + q + ": " + e.getMessage());
+					success = false;
+				} finally {
+					// the analysis is built by the first query that needs it
+					analysis = slicer.analysis;
+				}
+			}
+		} finally {
+			SliceAnalysis.close(analysis);
+		}
+		return success;
+	}
+
+	// methods are the methods preprocessed with the query's
+	private FlagSlicer makeSlicer(Query q, Collection<String> methods) {
+		FlagSlicer slicer = q.makeSlicer();
+		slicer.setPreprocessedMethods(methods);
+		slicer.setCache(cache);
+		slicer.setLocalMode(localMode);
+		slicer.setPrimordialSnapshot(primordialSnapshot);
+		slicer.setPrecision(maxTier, timeBudgetMillis, heapBudgetBytes);
+		slicer.setWriteMetrics(writeMetrics);
+		slicer.setMemoWeight(memoWeight);
+		slicer.setMemoryBudget(memoryBudgetBytes);
+		return slicer;
+	}
+}
@@ -0,0 +1,106 @@
+package slicer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+
+import com.ibm.wala.util.MonitorUtil.IProgressMonitor;
+
+/*
+ * A progress monitor that cancels the monitored analysis once it runs longer than its time
+ * budget, or once the live heap grows beyond the heap budget. A budget of 0 is unbounded.
+ * WALA's builders poll isCanceled() as they go, and abort with a cancel exception.
+ */
+public class BudgetMonitor implements IProgressMonitor {
+	private final long deadline;
+	private final long heapBudgetBytes;
+	// the collections that ran before the analysis started, whose live heap isn't the analysis's
+	private final long startCollections;
+	private String cancelMessage;
+
+	public BudgetMonitor(long timeBudgetMillis, long heapBudgetBytes) {
+		this.deadline = timeBudgetMillis > 0 ? System.currentTimeMillis() + timeBudgetMillis : Long.MAX_VALUE;
+		this.heapBudgetBytes = heapBudgetBytes;
+		this.startCollections = getCollectionCount();
+	}
+
+	public void beginTask(String task, int totalWork) {
+	}
+
+	public void subTask(String subTask) {
+	}
+
+	public boolean isCanceled() {
+		if (cancelMessage != null) {
+			return true;
+		}
+		if (System.currentTimeMillis() > deadline) {
+			cancelMessage = "time budget exceeded";
+			return true;
+		}
+		// the live heap is measured by collections: until one runs during the analysis, it is the
+		// live heap of what ran before it (such as a cancelled call graph tier)
+		if (heapBudgetBytes > 0 && getCollectionCount() > startCollections) {
+			if (getLiveHeapBytes() > heapBudgetBytes) {
+				cancelMessage = "heap budget exceeded";
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void cancel() {
+		if (cancelMessage == null) {
+			cancelMessage = "canceled";
+		}
+	}
+
+	public void done() {
+	}
+
+	public void worked(int units) {
+	}
+
+	public String getCancelMessage() {
+		return cancelMessage;
+	}
+
+	/*
+	 * The heap that was still in use after the latest collection of every heap pool. The used
+	 * heap also counts the garbage that wasn't collected yet, which would cancel an analysis
+	 * whose live data fits the budget. Falls back to the used heap if the pools don't report
+	 * their usage after collections.
+	 */
+	public static long getLiveHeapBytes() {
+		long live = 0;
+		boolean reported = false;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP) {
+				continue;
+			}
+			// null if the pool doesn't report its usage after collections
+			MemoryUsage usage = pool.getCollectionUsage();
+			if (usage != null) {
+				live += usage.getUsed();
+				reported = true;
+			}
+		}
+		if (!reported) {
+			Runtime rt = Runtime.getRuntime();
+			return rt.totalMemory() - rt.freeMemory();
+		}
+		return live;
+	}
+
+	// the number of collections of all the collectors since the JVM started
+	public static long getCollectionCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+			// -1 if the collector doesn't count its collections
+			count += Math.max(collector.getCollectionCount(), 0);
+		}
+		return count;
+	}
+}
@@ -0,0 +1,237 @@
+package slicer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.ibm.wala.shrikeBT.BinaryOpInstruction;
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.Constants;
+import com.ibm.wala.shrikeBT.ConversionInstruction;
+import com.ibm.wala.shrikeBT.Decoder;
+import com.ibm.wala.shrikeBT.IBinaryOpInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.LoadInstruction;
+import com.ibm.wala.shrikeBT.MethodData;
+import com.ibm.wala.shrikeBT.MethodEditor;
+import com.ibm.wala.shrikeBT.StoreInstruction;
+import com.ibm.wala.shrikeBT.shrikeCT.CTDecoder;
+import com.ibm.wala.shrikeBT.shrikeCT.ClassInstrumenter;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.CodeReader;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.shrikeCT.LocalVariableTableReader;
+
+/*
+ * Adds the flag helper to the bytecode of methods, the way JavaCodeTransformer adds it to
+ * their source, without parsing or compiling anything: a new int local is set to 0 at the
+ * start of the method, and it is added to the value of every store that declares a numeric
+ * (int, long, float or double) local that isn't a parameter.
+ * Bytecode has no declarations, so a store declares a local if the local variable table starts
+ * a variable in its slot right after it - every declaration, even one whose slot was used by
+ * an earlier variable, wherever it is in the code. A local that is declared without an
+ * initializer starts at its first assignment, so unlike the source transformation, that
+ * assignment gets the helper. Without a local variable table (classes compiled without -g),
+ * every store to a numeric local gets the helper.
+ * Locals of type short, byte, char and boolean are all stored as ints, so unlike the source
+ * transformation, this one also changes byte, char and boolean locals.
+ * The changed class replaces the original one through an overlay. Its line numbers are kept,
+ * so the original source (if the jar has it) is the source of the slice.
+ */
+public class BytecodeInstrumenter {
+	private static final String CODE = "Code";
+
+	public ClassOverlay instrument(String jarPath, String jarFileName, String fileName, String packageName,
+			String className, Collection<String> methodNames) throws IOException {
+		String jarFile = jarPath + File.separator + jarFileName + ".jar";
+		String packageDir = packageName.isEmpty() ? "" : packageName.replace('.', '/') + "/";
+		String classEntry = packageDir + className + ".class";
+
+		ClassOverlay overlay = new ClassOverlay(jarFile);
+		try (JarFile jar = new JarFile(jarFile)) {
+			byte[] classBytes = readEntry(jar, classEntry);
+			if (classBytes == null) {
+				throw new IOException("no class " + classEntry + " in " + jarFile);
+			}
+			overlay.addClass((packageDir + className).replace('/', '.'), instrumentClass(classBytes, methodNames));
+
+			byte[] source = readEntry(jar, packageDir + fileName + ".java");
+			if (source != null) {
+				overlay.setSource(packageDir + fileName + ".java", source);
+			}
+		} catch (InvalidClassFileException e) {
+			throw new IOException("can't instrument " + classEntry + ": " + e.getMessage(), e);
+		}
+		return overlay;
+	}
+
+	private byte[] readEntry(JarFile jar, String name) throws IOException {
+		JarEntry entry = jar.getJarEntry(name);
+		if (entry == null) {
+			return null;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = jar.getInputStream(entry)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private byte[] instrumentClass(byte[] classBytes, Collection<String> methodNames) throws InvalidClassFileException {
+		ClassInstrumenter ci = new ClassInstrumenter("overlay", classBytes, null, false);
+		ClassReader reader = ci.getReader();
+		for (int i = 0; i < reader.getMethodCount(); ++i) {
+			if (!methodNames.contains(reader.getMethodName(i))) {
+				continue;
+			}
+			// abstract and native methods have no code
+			MethodData md = ci.visitMethod(i);
+			if (md != null) {
+				FlagSlicer.progress("instrumenting " + md.getName() + md.getSignature());
+				instrumentMethod(md, ci.getMethodCode(i).getMaxLocals(), findDeclarations(reader, i));
+			}
+		}
+		return ci.emitClass().makeBytes();
+	}
+
+	/*
+	 * The instructions (by their index in the decoded method) that store the first value of a
+	 * variable of the local variable table, or null if the method has no local variable table.
+	 */
+	private static BitSet findDeclarations(ClassReader reader, int m) throws InvalidClassFileException {
+		ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+		reader.initMethodAttributeIterator(m, attrs);
+		for (; attrs.isValid(); attrs.advance()) {
+			if (!attrs.getName().equals(CODE)) {
+				continue;
+			}
+			CodeReader code = new CodeReader(attrs);
+			int[][] names = LocalVariableTableReader.makeVarMap(code);
+			if (names == null) {
+				return null;
+			}
+			// decoded the same way the instrumenter decodes the method, so the indices match
+			CTDecoder decoder = new CTDecoder(code);
+			try {
+				decoder.decode();
+			} catch (Decoder.InvalidBytecodeException e) {
+				throw new InvalidClassFileException(0, e.getMessage());
+			}
+			IInstruction[] instructions = decoder.getInstructions();
+			int[] bytecodes = decoder.getInstructionsToBytecodes();
+			BitSet declarations = new BitSet();
+			for (int i = 0; i < instructions.length; ++i) {
+				if (!(instructions[i] instanceof StoreInstruction)) {
+					continue;
+				}
+				int local = ((StoreInstruction) instructions[i]).getVarIndex();
+				int next = i + 1;
+				while (next < instructions.length && bytecodes[next] == bytecodes[i]) {
+					++next;
+				}
+				int nextPc = next < instructions.length ? bytecodes[next] : code.getBytecodeLength();
+				int[] after = nextPc < names.length ? getVariable(names[nextPc], local) : null;
+				int[] before = getVariable(names[bytecodes[i]], local);
+				// a variable starts after the store, or another one replaces the variable of the slot
+				if (after != null && (before == null || before[0] != after[0] || before[1] != after[1])) {
+					declarations.set(i);
+				}
+			}
+			return declarations;
+		}
+		return null;
+	}
+
+	// the name and type indices of the variable in the slot, or null if the slot has none
+	private static int[] getVariable(int[] names, int local) {
+		if (names == null || 2 * local + 1 >= names.length || names[2 * local] == 0) {
+			return null;
+		}
+		return new int[] { names[2 * local], names[2 * local + 1] };
+	}
+
+	// declarations is null to add the helper to every store to a numeric local
+	private void instrumentMethod(MethodData md, int maxLocals, BitSet declarations) {
+		MethodEditor me = new MethodEditor(md);
+		me.beginPass();
+		// the helper takes the first free slot, the class writer counts it in the locals of the method
+		final int helper = maxLocals;
+
+		// helper = 0
+		me.insertAtStart(new MethodEditor.Patch() {
+			@Override
+			public void emitTo(MethodEditor.Output w) {
+				w.emit(ConstantInstruction.make(0));
+				w.emit(StoreInstruction.make(Constants.TYPE_int, helper));
+			}
+		});
+
+		int firstLocal = getParameterSlots(md);
+		IInstruction[] instructions = me.getInstructions();
+		for (int i = 0; i < instructions.length; ++i) {
+			if (!(instructions[i] instanceof StoreInstruction)) {
+				continue;
+			}
+			StoreInstruction store = (StoreInstruction) instructions[i];
+			final String type = store.getType();
+			int local = store.getVarIndex();
+			if (local < firstLocal || local == helper || !isNumeric(type) ||
+					(declarations != null && !declarations.get(i))) {
+				continue;
+			}
+
+			// the stored value becomes value + helper
+			me.insertBefore(i, new MethodEditor.Patch() {
+				@Override
+				public void emitTo(MethodEditor.Output w) {
+					w.emit(LoadInstruction.make(Constants.TYPE_int, helper));
+					if (!type.equals(Constants.TYPE_int)) {
+						w.emit(ConversionInstruction.make(Constants.TYPE_int, type));
+					}
+					w.emit(BinaryOpInstruction.make(type, IBinaryOpInstruction.Operator.ADD));
+				}
+			});
+		}
+
+		me.applyPatches();
+		me.endPass();
+	}
+
+	private static boolean isNumeric(String type) {
+		return type.equals(Constants.TYPE_int) || type.equals(Constants.TYPE_long) ||
+				type.equals(Constants.TYPE_float) || type.equals(Constants.TYPE_double);
+	}
+
+	// the number of local slots taken by this and the parameters
+	private static int getParameterSlots(MethodData md) {
+		String signature = md.getSignature();
+		int slots = md.getIsStatic() ? 0 : 1;
+		int i = 1;
+		while (signature.charAt(i) != ')') {
+			char c = signature.charAt(i);
+			if (c == 'J' || c == 'D') {
+				slots += 2;
+			} else {
+				++slots;
+			}
+			// skip over array dimensions and class names
+			while (signature.charAt(i) == '[') {
+				++i;
+			}
+			if (signature.charAt(i) == 'L') {
+				i = signature.indexOf(';', i);
+			}
+			++i;
+		}
+		return slots;
+	}
+}
@@ -0,0 +1,72 @@
+package slicer;
+
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+
+/*
+ * The precision ladder of call graph constructions, from the cheapest to the most precise.
+ * CHA has no pointer analysis, so slices over it ignore heap dependences.
+ */
+public enum CallGraphTier {
+	CHA("cha"),
+	RTA("rta") {
+		@Override
+		CallGraphBuilder makeBuilder(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha, AnalysisScope scope) {
+			return Util.makeRTABuilder(options, cache, cha, scope);
+		}
+	},
+	ZERO_CFA("0-cfa") {
+		@Override
+		CallGraphBuilder makeBuilder(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha, AnalysisScope scope) {
+			return Util.makeZeroCFABuilder(options, cache, cha, scope);
+		}
+	},
+	ZERO_ONE_CFA("0-1-cfa") {
+		@Override
+		CallGraphBuilder makeBuilder(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha, AnalysisScope scope) {
+			return Util.makeZeroOneCFABuilder(options, cache, cha, scope);
+		}
+	},
+	CONTAINER("container") {
+		@Override
+		CallGraphBuilder makeBuilder(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha, AnalysisScope scope) {
+			return Util.makeZeroOneContainerCFABuilder(options, cache, cha, scope);
+		}
+	};
+
+	public static final CallGraphTier DEFAULT = ZERO_ONE_CFA;
+
+	private final String displayName;
+
+	private CallGraphTier(String displayName) {
+		this.displayName = displayName;
+	}
+
+	// returns null for CHA, whose call graph isn't built by a propagation builder
+	CallGraphBuilder makeBuilder(AnalysisOptions options, AnalysisCache cache, IClassHierarchy cha, AnalysisScope scope) {
+		return null;
+	}
+
+	// the next tier to fall back to, or null if this is the cheapest one
+	public CallGraphTier cheaper() {
+		return ordinal() == 0 ? null : values()[ordinal() - 1];
+	}
+
+	public static CallGraphTier fromName(String name) {
+		for (CallGraphTier tier : values()) {
+			if (tier.displayName.equalsIgnoreCase(name)) {
+				return tier;
+			}
+		}
+		throw new IllegalArgumentException("unknown call graph tier: " + name);
+	}
+
+	@Override
+	public String toString() {
+		return displayName;
+	}
+}
@@ -0,0 +1,154 @@
+package slicer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/*
+ * The hashes of the classes of a jar, by class name (e.g. example/Test), so that a cached
+ * slice can be checked against the classes it depends on instead of against the whole jar.
+ * Hashing a big jar takes a while, so the hashes of every jar are kept in a manifest file,
+ * which is reused as long as the jar's size and modification time are the same. The hashes
+ * are of the jar as it is, before preprocessing, so they can be checked before anything is
+ * preprocessed (see SliceCache.getClassHashes).
+ */
+public class ClassHashes {
+	// the name under which the hash of the list of all the class names is kept
+	static final String CLASS_LIST = "*";
+	private static final String MANIFEST_SUFFIX = ".classes";
+
+	Map<String, String> hashes = new HashMap<String, String>();
+	// the size and modification time of the jar when it was hashed
+	String stamp;
+
+	ClassHashes(String stamp) {
+		this.stamp = stamp;
+	}
+
+	public static ClassHashes load(File jar, File manifestDir) throws IOException {
+		File manifest = new File(manifestDir, SliceCache.hashStrings(jar.getAbsolutePath()) + MANIFEST_SUFFIX);
+		ClassHashes classHashes = new ClassHashes(getStamp(jar));
+		if (!classHashes.readManifest(manifest, classHashes.stamp)) {
+			classHashes.hashJar(jar);
+			classHashes.writeManifest(manifest, classHashes.stamp);
+		}
+		classHashes.hashes.put(CLASS_LIST, classHashes.hashClassList());
+		return classHashes;
+	}
+
+	private static String getStamp(File jar) {
+		return jar.lastModified() + "," + jar.length();
+	}
+
+	// is the jar still the one that was hashed
+	public boolean isCurrent(File jar) {
+		return stamp.equals(getStamp(jar));
+	}
+
+	private void hashJar(File jar) throws IOException {
+		byte[] buf = new byte[64 * 1024];
+		try (JarFile jarFile = new JarFile(jar)) {
+			for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+				JarEntry entry = entries.nextElement();
+				String name = entry.getName();
+				if (!name.endsWith(".class")) {
+					continue;
+				}
+				MessageDigest digest = SliceCache.newDigest();
+				try (InputStream in = jarFile.getInputStream(entry)) {
+					int n;
+					while ((n = in.read(buf)) != -1) {
+						digest.update(buf, 0, n);
+					}
+				}
+				hashes.put(name.substring(0, name.length() - ".class".length()), SliceCache.toHex(digest.digest()));
+			}
+		}
+	}
+
+	// adding or removing a class may change the class hierarchy of classes that didn't change
+	private String hashClassList() {
+		List<String> names = new ArrayList<String>(hashes.keySet());
+		names.remove(CLASS_LIST);
+		Collections.sort(names);
+		return SliceCache.hashStrings(names.toArray(new String[names.size()]));
+	}
+
+	// returns false if there's no manifest of the jar as it is now
+	private boolean readManifest(File manifest, String stamp) {
+		if (!manifest.isFile()) {
+			return false;
+		}
+		try (BufferedReader br = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+			if (!stamp.equals(br.readLine())) {
+				return false;
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				int sep = line.lastIndexOf('=');
+				if (sep > 0) {
+					hashes.put(line.substring(0, sep), line.substring(sep + 1));
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			System.err.println("corrupted class manifest: " + manifest);
+			hashes.clear();
+			return false;
+		}
+	}
+
+	private void writeManifest(File manifest, String stamp) throws IOException {
+		// write to a temporary file first, so that readers never see a partial manifest
+		File tmp = File.createTempFile(manifest.getName(), ".tmp", manifest.getParentFile());
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(stamp + "\n");
+			for (Map.Entry<String, String> entry : hashes.entrySet()) {
+				writer.write(entry.getKey() + "=" + entry.getValue() + "\n");
+			}
+		}
+		manifest.delete();
+		if (!tmp.renameTo(manifest)) {
+			tmp.delete();
+			throw new IOException("can't write class manifest: " + manifest);
+		}
+	}
+
+	// the current hashes of the given classes, and of the class list
+	public Map<String, String> select(Collection<String> classNames) {
+		Map<String, String> selected = new TreeMap<String, String>();
+		for (String name : classNames) {
+			String hash = hashes.get(name);
+			if (hash != null) {
+				selected.put(name, hash);
+			}
+		}
+		selected.put(CLASS_LIST, hashes.get(CLASS_LIST));
+		return selected;
+	}
+
+	// are all the given class hashes current
+	public boolean matches(Map<String, String> dependencies) {
+		for (Map.Entry<String, String> entry : dependencies.entrySet()) {
+			if (!entry.getValue().equals(hashes.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,83 @@
+package slicer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.jar.JarOutputStream;
+
+import com.ibm.wala.classLoader.JarStreamModule;
+import com.ibm.wala.classLoader.Module;
+
+/*
+ * The entries of a jar that were changed by preprocessing - the compiled classes and the
+ * changed source file - kept in memory instead of being patched into a copy of the jar.
+ * The analysis adds them to its scope as a module ahead of the original jar, so the changed
+ * classes are resolved from the overlay and all the other classes from the jar as it is.
+ */
+public class ClassOverlay {
+	String jarPath;
+	String sourceEntry;
+	// jar entry names (e.g. example/Test.class) to their contents
+	Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+	// the lines of the source that hold flag helpers, see JavaCodeTransformer.getHelperLines
+	Map<Integer, String> helperLines = Collections.emptyMap();
+
+	public ClassOverlay(String jarPath) {
+		this.jarPath = jarPath;
+	}
+
+	// the original jar that the overlay applies to
+	public String getJarPath() {
+		return jarPath;
+	}
+
+	public void addClass(String className, byte[] bytes) {
+		entries.put(className.replace('.', '/') + ".class", bytes);
+	}
+
+	public void setSource(String entryName, String sourceCode) {
+		setSource(entryName, sourceCode.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void setSource(String entryName, byte[] source) {
+		sourceEntry = entryName;
+		entries.put(entryName, source);
+	}
+
+	// names the changed source file (or class) within its jar, e.g. test.jar!example/Test.java
+	public String getName() {
+		return jarPath + "!" + (sourceEntry != null ? sourceEntry : entries.keySet().iterator().next());
+	}
+
+	// the changed source file, encoded as UTF-8, or null if there is no source
+	public byte[] getSource() {
+		return entries.get(sourceEntry);
+	}
+
+	public void setHelperLines(Map<Integer, String> lines) {
+		helperLines = lines;
+	}
+
+	public Map<Integer, String> getHelperLines() {
+		return helperLines;
+	}
+
+	// a module reading the overlay entries from an in-memory jar
+	public Module toModule() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream out = new JarOutputStream(bytes)) {
+			for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+				out.putNextEntry(new JarEntry(entry.getKey()));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+		return new JarStreamModule(new JarInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+}
@@ -0,0 +1,418 @@
+package slicer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.ibm.wala.shrikeBT.ConstantInstruction;
+import com.ibm.wala.shrikeBT.Constants;
+import com.ibm.wala.shrikeBT.Decoder;
+import com.ibm.wala.shrikeBT.IConditionalBranchInstruction;
+import com.ibm.wala.shrikeBT.IInstruction;
+import com.ibm.wala.shrikeBT.LoadInstruction;
+import com.ibm.wala.shrikeBT.StoreInstruction;
+import com.ibm.wala.shrikeBT.shrikeCT.CTDecoder;
+import com.ibm.wala.shrikeCT.ClassReader;
+import com.ibm.wala.shrikeCT.CodeReader;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+import com.ibm.wala.shrikeCT.LineNumberTableReader;
+import com.ibm.wala.shrikeCT.LocalVariableTableReader;
+import com.ibm.wala.shrikeCT.SourceFileReader;
+
+/*
+ * An index of the flags of a jar - the boolean parameters that conditional branches depend
+ * on - by class and method, with the locations (bytecode index and line) of their branches.
+ * The jar is scanned with Shrike, class by class and in parallel, without building a class
+ * hierarchy or a call graph. A branch depends on a flag when the flag is its first operand,
+ * the way collectSeeds matches the uses of the SSA branches of a method. A parameter that
+ * the method stores to is a different value after the store, so it isn't indexed.
+ * Flags that a query can't name - of overloaded methods, nested classes or unnamed
+ * parameters - are indexed but left out of the manifest.
+ * The index of a jar is kept in the index directory under the hash of the jar, and it is
+ * reused as long as the jar is the same. It lists every flag as a query of a batch manifest
+ * (see BatchSlicer), so that the whole inventory can be sliced in one run.
+ */
+public class FlagIndex {
+	private static final String FORMAT_VERSION = "2";
+	private static final String INDEX_SUFFIX = ".flags";
+	private static final String CODE = "Code";
+	private static final String SOURCE_FILE = "SourceFile";
+
+	// a flag of a method, and the branches that depend on it
+	public static class Flag {
+		// e.g. example/Test
+		String className;
+		// the source file of the class (e.g. Test.java), as recorded in the class file
+		String sourceFile;
+		String methodName;
+		String descriptor;
+		// whether the class has other methods of the same name, which a query can't tell apart
+		boolean overloaded;
+		String flagName;
+		// the index of the parameter, where 0 is this in instance methods
+		int parameter;
+		int[] branchIndices;
+		// -1 where the class has no line numbers
+		int[] branchLines;
+
+		String getPackageName() {
+			int sep = className.lastIndexOf('/');
+			return sep == -1 ? "" : className.substring(0, sep).replace('/', '.');
+		}
+
+		String getSimpleClassName() {
+			return className.substring(className.lastIndexOf('/') + 1);
+		}
+
+		// the reason a query can't slice the method by the flag, or null if it can
+		String getUnqueryableReason() {
+			if (flagName.indexOf(' ') != -1) {
+				return "unnamed " + flagName;
+			}
+			if (overloaded) {
+				return "overloaded method " + descriptor;
+			}
+			// the source is matched by the simple name of a top level class
+			if (getSimpleClassName().indexOf('$') != -1) {
+				return "nested class";
+			}
+			return null;
+		}
+
+		// a batch query that slices the method by the flag, into a file of the output directory
+		public BatchSlicer.Query toQuery(String jarPath, String jarFileName, File outputDir) {
+			String outputName = className.replace('/', '.') + "." + methodName + "." + flagName + ".slice";
+			return new BatchSlicer.Query(jarPath, jarFileName, sourceFile, getPackageName(), getSimpleClassName(),
+					methodName, flagName, new File(outputDir, outputName).getPath());
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < branchIndices.length; ++i) {
+				sb.append(i == 0 ? "" : ",").append(branchIndices[i]).append(':').append(branchLines[i]);
+			}
+			return className + "\t" + sourceFile + "\t" + methodName + "\t" + descriptor + "\t" + overloaded + "\t" +
+					flagName + "\t" + parameter + "\t" + sb;
+		}
+
+		static Flag parse(String line) throws IOException {
+			String[] fields = line.split("\t");
+			if (fields.length != 8) {
+				throw new IOException("malformed flag: " + line);
+			}
+			Flag flag = new Flag();
+			flag.className = fields[0];
+			flag.sourceFile = fields[1];
+			flag.methodName = fields[2];
+			flag.descriptor = fields[3];
+			flag.overloaded = Boolean.parseBoolean(fields[4]);
+			flag.flagName = fields[5];
+			flag.parameter = Integer.parseInt(fields[6]);
+			String[] branches = fields[7].split(",");
+			flag.branchIndices = new int[branches.length];
+			flag.branchLines = new int[branches.length];
+			for (int i = 0; i < branches.length; ++i) {
+				int sep = branches[i].indexOf(':');
+				flag.branchIndices[i] = Integer.parseInt(branches[i].substring(0, sep));
+				flag.branchLines[i] = Integer.parseInt(branches[i].substring(sep + 1));
+			}
+			return flag;
+		}
+	}
+
+	List<Flag> flags = new ArrayList<Flag>();
+
+	// the index of the jar, which is scanned (and kept in the index directory) if it wasn't indexed yet
+	public static FlagIndex load(File indexDir, File jar, int parallelism) throws IOException {
+		if (!indexDir.isDirectory() && !indexDir.mkdirs()) {
+			throw new IOException("can't create index directory: " + indexDir);
+		}
+		File indexFile = new File(indexDir, SliceCache.hashFile(jar) + INDEX_SUFFIX);
+		FlagIndex index = new FlagIndex();
+		if (index.readIndex(indexFile)) {
+			return index;
+		}
+		index = scan(jar, parallelism);
+		index.writeIndex(indexFile);
+		return index;
+	}
+
+	public static FlagIndex scan(final File jar, int parallelism) throws IOException {
+		FlagIndex index = new FlagIndex();
+		try (final JarFile jarFile = new JarFile(jar)) {
+			List<Callable<List<Flag>>> tasks = new ArrayList<Callable<List<Flag>>>();
+			for (Enumeration<JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
+				final JarEntry entry = entries.nextElement();
+				if (!entry.getName().endsWith(".class")) {
+					continue;
+				}
+				tasks.add(new Callable<List<Flag>>() {
+					@Override
+					public List<Flag> call() throws Exception {
+						try {
+							return scanClass(readEntry(jarFile, entry));
+						} catch (InvalidClassFileException | Decoder.InvalidBytecodeException e) {
+							System.err.println("can't scan " + entry.getName() + ": " + e.getMessage());
+							return Collections.emptyList();
+						}
+					}
+				});
+			}
+
+			ForkJoinPool pool = new ForkJoinPool(parallelism);
+			List<Future<List<Flag>>> results;
+			try {
+				results = pool.invokeAll(tasks);
+			} finally {
+				pool.shutdown();
+			}
+			// in the order of the entries, so that the index doesn't depend on the order the workers finish in
+			for (Future<List<Flag>> result : results) {
+				index.flags.addAll(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("scan of " + jar + " was interrupted", e);
+		} catch (ExecutionException e) {
+			throw new IOException("can't scan " + jar + ": " + e.getCause().getMessage(), e.getCause());
+		}
+		return index;
+	}
+
+	private static byte[] readEntry(JarFile jar, JarEntry entry) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = jar.getInputStream(entry)) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	static List<Flag> scanClass(byte[] classBytes) throws InvalidClassFileException, Decoder.InvalidBytecodeException {
+		List<Flag> flags = new ArrayList<Flag>();
+		ClassReader reader = new ClassReader(classBytes);
+		String className = reader.getName();
+		String sourceFile = getSourceFile(reader, className);
+		Set<String> names = new HashSet<String>();
+		Set<String> overloaded = new HashSet<String>();
+		for (int m = 0; m < reader.getMethodCount(); ++m) {
+			if (!names.add(reader.getMethodName(m))) {
+				overloaded.add(reader.getMethodName(m));
+			}
+		}
+		ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+		for (int m = 0; m < reader.getMethodCount(); ++m) {
+			String descriptor = reader.getMethodType(m);
+			int firstBoolean = descriptor.indexOf('Z');
+			if (firstBoolean == -1 || firstBoolean > descriptor.indexOf(')')) {
+				// no boolean parameters
+				continue;
+			}
+			reader.initMethodAttributeIterator(m, attrs);
+			for (; attrs.isValid(); attrs.advance()) {
+				if (attrs.getName().equals(CODE)) {
+					scanMethod(reader, m, new CodeReader(attrs), className, sourceFile,
+							overloaded.contains(reader.getMethodName(m)), flags);
+					break;
+				}
+			}
+		}
+		return flags;
+	}
+
+	private static void scanMethod(ClassReader reader, int m, CodeReader code, String className, String sourceFile,
+			boolean overloaded, List<Flag> flags) throws InvalidClassFileException, Decoder.InvalidBytecodeException {
+		CTDecoder decoder = new CTDecoder(code);
+		decoder.decode();
+		IInstruction[] instructions = decoder.getInstructions();
+		int[] bytecodes = decoder.getInstructionsToBytecodes();
+		int[] lines = LineNumberTableReader.makeBytecodeToSourceMap(code);
+		int[][] names = LocalVariableTableReader.makeVarMap(code);
+
+		BitSet stored = new BitSet();
+		for (IInstruction instruction : instructions) {
+			if (instruction instanceof StoreInstruction) {
+				stored.set(((StoreInstruction) instruction).getVarIndex());
+			}
+		}
+
+		boolean isStatic = (reader.getMethodAccessFlags(m) & Constants.ACC_STATIC) != 0;
+		String descriptor = reader.getMethodType(m);
+		int parameter = isStatic ? 0 : 1;
+		int slot = parameter;
+		for (int i = 1; descriptor.charAt(i) != ')'; ++i, ++parameter) {
+			char type = descriptor.charAt(i);
+			while (descriptor.charAt(i) == '[') {
+				++i;
+			}
+			if (descriptor.charAt(i) == 'L') {
+				i = descriptor.indexOf(';', i);
+			}
+			if (type == 'Z' && !stored.get(slot)) {
+				Flag flag = findBranches(instructions, bytecodes, lines, slot);
+				if (flag != null) {
+					flag.className = className;
+					flag.sourceFile = sourceFile;
+					flag.methodName = reader.getMethodName(m);
+					flag.descriptor = descriptor;
+					flag.overloaded = overloaded;
+					flag.parameter = parameter;
+					flag.flagName = getLocalName(reader, names, slot, parameter);
+					flags.add(flag);
+				}
+			}
+			slot += type == 'J' || type == 'D' ? 2 : 1;
+		}
+	}
+
+	/*
+	 * The branches whose first operand is the local of the flag, or null if there are none.
+	 * Shrike decodes every conditional branch as a comparison of two operands (ifeq pushes a 0
+	 * constant), so a branch that directly follows the load of the flag has it as its second
+	 * operand. The flag is the first operand when the load is followed by the push of the second
+	 * one - a constant or a local - and then by the branch. Flags compared to other expressions
+	 * aren't found.
+	 */
+	private static Flag findBranches(IInstruction[] instructions, int[] bytecodes, int[] lines, int slot) {
+		List<Integer> branches = new ArrayList<Integer>();
+		for (int i = 0; i + 2 < instructions.length; ++i) {
+			if (!(instructions[i] instanceof LoadInstruction)) {
+				continue;
+			}
+			LoadInstruction load = (LoadInstruction) instructions[i];
+			// a boolean is loaded as an int
+			if (load.getVarIndex() != slot || !Constants.TYPE_int.equals(load.getType())) {
+				continue;
+			}
+			if ((instructions[i + 1] instanceof ConstantInstruction || instructions[i + 1] instanceof LoadInstruction) &&
+					instructions[i + 2] instanceof IConditionalBranchInstruction) {
+				branches.add(i + 2);
+			}
+		}
+		if (branches.isEmpty()) {
+			return null;
+		}
+		Flag flag = new Flag();
+		flag.branchIndices = new int[branches.size()];
+		flag.branchLines = new int[branches.size()];
+		for (int i = 0; i < branches.size(); ++i) {
+			int bytecode = bytecodes[branches.get(i)];
+			flag.branchIndices[i] = bytecode;
+			flag.branchLines[i] = lines == null || bytecode >= lines.length ? -1 : lines[bytecode];
+		}
+		return flag;
+	}
+
+	// the name of the parameter in the local variable table, as collectSeeds names it when there's none
+	private static String getLocalName(ClassReader reader, int[][] names, int slot, int parameter)
+			throws InvalidClassFileException {
+		if (names != null && names.length > 0 && names[0] != null && names[0].length > slot * 2 &&
+				names[0][slot * 2] != 0) {
+			return reader.getCP().getCPUtf8(names[0][slot * 2]);
+		}
+		return "parameter " + parameter;
+	}
+
+	private static String getSourceFile(ClassReader reader, String className) throws InvalidClassFileException {
+		ClassReader.AttrIterator attrs = new ClassReader.AttrIterator();
+		reader.initClassAttributeIterator(attrs);
+		for (; attrs.isValid(); attrs.advance()) {
+			if (attrs.getName().equals(SOURCE_FILE)) {
+				return reader.getCP().getCPUtf8(new SourceFileReader(attrs).getSourceFileCPIndex());
+			}
+		}
+		// the top level class of a nested class shares its file
+		String name = className.substring(className.lastIndexOf('/') + 1);
+		return (name.indexOf('$') == -1 ? name : name.substring(0, name.indexOf('$'))) + ".java";
+	}
+
+	public List<Flag> getFlags() {
+		return flags;
+	}
+
+	// the flags of the methods of the given name (of every overload), in the given class (e.g. example/Test)
+	public List<Flag> getFlags(String className, String methodName) {
+		List<Flag> methodFlags = new ArrayList<Flag>();
+		for (Flag flag : flags) {
+			if (flag.className.equals(className) && flag.methodName.equals(methodName)) {
+				methodFlags.add(flag);
+			}
+		}
+		return methodFlags;
+	}
+
+	// writes a batch manifest that slices every flag of the index
+	public void writeManifest(Writer writer, String jarPath, String jarFileName, File outputDir) throws IOException {
+		writer.write("# jarPath\tjarFileName\tfileName\tpackageName\tclassName\tmethodName\tflagName\toutputPath\n");
+		for (Flag flag : flags) {
+			String reason = flag.getUnqueryableReason();
+			if (reason != null) {
+				writer.write("# " + flag.className + "." + flag.methodName + " " + flag.flagName + ": " + reason + "\n");
+				continue;
+			}
+			writer.write(flag.toQuery(jarPath, jarFileName, outputDir).toManifestLine() + "\n");
+		}
+	}
+
+	// returns false if there's no index of the current format
+	private boolean readIndex(File indexFile) {
+		if (!indexFile.isFile()) {
+			return false;
+		}
+		try (BufferedReader br = Files.newBufferedReader(indexFile.toPath(), StandardCharsets.UTF_8)) {
+			if (!FORMAT_VERSION.equals(br.readLine())) {
+				return false;
+			}
+			String line;
+			while ((line = br.readLine()) != null) {
+				if (!line.isEmpty()) {
+					flags.add(Flag.parse(line));
+				}
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("corrupted flag index: " + indexFile);
+			flags.clear();
+			return false;
+		}
+	}
+
+	private void writeIndex(File indexFile) throws IOException {
+		// write to a temporary file first, so that readers never see a partial index
+		File tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(FORMAT_VERSION + "\n");
+			for (Flag flag : flags) {
+				writer.write(flag + "\n");
+			}
+		}
+		indexFile.delete();
+		if (!tmp.renameTo(indexFile)) {
+			tmp.delete();
+			throw new IOException("can't write flag index: " + indexFile);
+		}
+	}
+}
@@ -1,23 +1,26 @@
 package slicer;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.file.Path;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
-import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.jar.*;
 
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -26,22 +29,12 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 
 import com.github.javaparser.ParseException;
-import com.ibm.wala.ipa.callgraph.impl.Util;
 import com.ibm.wala.classLoader.IMethod;
-import com.ibm.wala.classLoader.ShrikeBTMethod;
-import com.ibm.wala.ipa.callgraph.AnalysisCache;
-import com.ibm.wala.ipa.callgraph.AnalysisOptions;
-import com.ibm.wala.ipa.callgraph.AnalysisScope;
 import com.ibm.wala.ipa.callgraph.CGNode;
 import com.ibm.wala.ipa.callgraph.CallGraph;
-import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
 import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
-import com.ibm.wala.ipa.callgraph.Entrypoint;
-import com.ibm.wala.ipa.cha.ClassHierarchy;
 import com.ibm.wala.ipa.cha.ClassHierarchyException;
-import com.ibm.wala.ipa.cha.IClassHierarchy;
 import com.ibm.wala.ipa.slicer.NormalStatement;
-import com.ibm.wala.ipa.slicer.Slicer;
 import com.ibm.wala.ipa.slicer.Statement;
 import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
 import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
@@ -50,13 +43,40 @@ import com.ibm.wala.ssa.SSAConditionalBranchInstruction;
 import com.ibm.wala.ssa.SSAInstruction;
 import com.ibm.wala.types.TypeReference;
 import com.ibm.wala.util.CancelException;
-import com.ibm.wala.util.config.AnalysisScopeReader;
 import com.ibm.wala.util.debug.Assertions;
 import com.ibm.wala.util.io.FileProvider;
 import com.ibm.wala.util.strings.Atom;
 
 
 public class FlagSlicer {
+	// the flag name that slices the method by each of its boolean parameters
+	public static final String ALL_FLAGS = "*";
+	// the dependences that slices follow
+	static final DataDependenceOptions DATA_OPTIONS = DataDependenceOptions.FULL;
+	static final ControlDependenceOptions CONTROL_OPTIONS = ControlDependenceOptions.NONE;
+	// progress messages are written only when verbose, so that stdout carries nothing but results
+	static boolean verbose;
+	
+	// thrown when the flag to slice by isn't a boolean parameter of the method
+	public static class InvalidFlagException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		public InvalidFlagException(String message) {
+			super(message);
+		}
+	}
+	
+	// the seeds of the slice of a single flag
+	static class FlagSeeds {
+		String flagName;
+		List<SSAInstruction> branchInstructions = new ArrayList<SSAInstruction>();
+		List<SSAInstruction> funcEnd = new ArrayList<SSAInstruction>();
+		
+		FlagSeeds(String flagName) {
+			this.flagName = flagName;
+		}
+	}
+	
 	String jarPath;
 	String jarName;
 	String fileName;
@@ -64,10 +84,31 @@ public class FlagSlicer {
 	String className;
 	String methodName;
 	String flagName;
-	String newJarPath;
-	String newJarName;
+	boolean allFlags;
+	// the preprocessed classes and source, on top of the original jar
+	ClassOverlay overlay;
 	String outputSlicePath;
-	ArrayList<String> srcFileLines;
+	SourceLines srcFileLines;
+	SliceCache cache;
+	SliceAnalysis analysis;
+	boolean localMode;
+	boolean bytecodeMode;
+	File primordialSnapshot;
+	CallGraphTier maxTier = CallGraphTier.DEFAULT;
+	long timeBudgetMillis;
+	long heapBudgetBytes;
+	long memoWeight = SliceMemo.DEFAULT_MAX_WEIGHT;
+	long memoryBudgetBytes;
+	// describes the analysis that produced the slice
+	String producedBy;
+	SliceMetrics metrics = new SliceMetrics();
+	boolean writeMetrics;
+	Set<String> preprocessedMethods;
+	// the application classes (e.g. example/Test) that the slice depends on
+	Collection<String> sliceDependencies;
+	// the key of the slice in the cache and the hashes of the jar, set once the slice is looked up
+	String cacheKey;
+	ClassHashes classHashes;
 	
 	public FlagSlicer(String jarFilePath, String jarFileName, String file, String packageN,
 			String classN, String method, String flag, String slicePath) {
@@ -78,225 +119,615 @@ public class FlagSlicer {
 		className = classN;
 		methodName = method;
 		flagName = flag;
+		allFlags = ALL_FLAGS.equals(flag);
 		outputSlicePath = slicePath;
-		srcFileLines = new ArrayList<String>();
+		preprocessedMethods = Collections.singleton(method);
 	}
 	
-	private void uploadFileToMem() throws IOException {
-		// Find the file inside the jar and extract it
-		JarFile jar = new JarFile(newJarPath + File.separator + newJarName);
-		String pathToFile = "";
-		Enumeration<JarEntry> entries = jar.entries();
-		while (entries.hasMoreElements()) {
-			JarEntry file = (JarEntry) entries.nextElement();
-			if (!file.getName().endsWith(fileName)) {
-				continue;
-			}
-			pathToFile = newJarPath + File.separator + fileName;
-			System.out.println("path to file: " + pathToFile);
-			File f = new File(pathToFile);
-			InputStream is = jar.getInputStream(file); // get the input stream
-			FileOutputStream fos = new FileOutputStream(f);
-			while (is.available() > 0) {  // write contents of 'is' to 'fos'
-				fos.write(is.read());
-			}
-			fos.close();
-			is.close();
+	// results are cached in (and served from) the given cache, if it is not null
+	public void setCache(SliceCache sliceCache) {
+		cache = sliceCache;
+	}
+	
+	// try to slice from the IR of the method alone before building the call graph
+	public void setLocalMode(boolean local) {
+		localMode = local;
+	}
+	
+	// add the flag helper to the bytecode of the method instead of to its source
+	public void setBytecodeMode(boolean bytecode) {
+		bytecodeMode = bytecode;
+	}
+	
+	// read the primordial classes from the snapshot (see PrimordialSnapshot), may be null
+	public void setPrimordialSnapshot(File snapshot) {
+		primordialSnapshot = snapshot;
+	}
+	
+	// the most precise call graph tier to try, and the time and heap budget (0 for unbounded) of each tier
+	public void setPrecision(CallGraphTier tier, long timeBudget, long heapBudget) {
+		maxTier = tier;
+		timeBudgetMillis = timeBudget;
+		heapBudgetBytes = heapBudget;
+	}
+	
+	// the number of statements of the closures that the analysis keeps in its memo (see SliceMemo)
+	public void setMemoWeight(long weight) {
+		memoWeight = weight;
+	}
+	
+	// the heap (0 for unbounded) the analysis should stay within, see SliceAnalysis.setMemoryBudget
+	public void setMemoryBudget(long budgetBytes) {
+		memoryBudgetBytes = budgetBytes;
+	}
+	
+	/*
+	 * The methods of the class that are preprocessed together with the method (including it),
+	 * e.g. by a batch. Every preprocessed method gets a helper declaration, which shifts the
+	 * lines of the methods after it in the preprocessed source.
+	 */
+	public void setPreprocessedMethods(Collection<String> methods) {
+		preprocessedMethods = new TreeSet<String>(methods);
+	}
+	
+	// describes the settings that affect the computed slice
+	String getSliceMode() {
+		return (localMode ? "local" : "full") + "," + getAnalysisMode();
+	}
+	
+	// describes the settings that affect the analysis, which slices with the same settings can share
+	String getAnalysisMode() {
+		return maxTier + "," + timeBudgetMillis + "," + heapBudgetBytes + 
+				(memoryBudgetBytes > 0 ? ",memory " + memoryBudgetBytes : "");
+	}
+	
+	// write the metrics of the phases of the slice next to its output (see SliceMetrics)
+	public void setWriteMetrics(boolean write) {
+		writeMetrics = write;
+		metrics.setMeasureHeap(write);
+	}
+	
+	// slices of the same jar and entrypoint can share a single analysis
+	public void setAnalysis(SliceAnalysis sharedAnalysis) {
+		analysis = sharedAnalysis;
+	}
+	
+	// builds the analysis if it wasn't built (or shared) yet
+	public SliceAnalysis getAnalysis() throws IOException, ClassHierarchyException {
+		if (analysis == null) {
+			analysis = new SliceAnalysis(overlay.getJarPath(), overlay, getExclusionsFile(), primordialSnapshot,
+					"L" + packageName + "/" + className);
+			analysis.setPrecision(maxTier, timeBudgetMillis, heapBudgetBytes);
+			analysis.getMemo().setMaxWeight(memoWeight);
+			analysis.setMemoryBudget(memoryBudgetBytes);
 		}
-		
-		System.out.println("extracted the file: " + pathToFile);
-		// load the file to memory
-	    String line;
-	    try (
-	        InputStream fis = new FileInputStream(pathToFile);
-	        InputStreamReader isr = new InputStreamReader(fis, Charset.forName("UTF-8"));
-	        BufferedReader br = new BufferedReader(isr);
-	    ) {
-	        while ((line = br.readLine()) != null) {
-	        	System.out.println("uploading line: " + line);
-	            srcFileLines.add(line);
-	        }
-	    } catch (FileNotFoundException e) {
-	    	System.err.println("Did not find the source file: " + pathToFile);
-			e.printStackTrace();
-		} catch (IOException e) {
-			System.err.println("io error occurred while reading file: " + pathToFile);
-			e.printStackTrace();
+		return analysis;
+	}
+	
+	private void uploadFileToMem() {
+		// index the lines of the preprocessed source, which is already in memory
+		byte[] source = overlay.getSource();
+		if (source == null) {
+			System.err.println("no source file " + fileName + " in the jar, the slice holds line numbers only");
+			srcFileLines = null;
+			return;
 		}
+		srcFileLines = new SourceLines(source, StandardCharsets.UTF_8);
 	}
 	
-	// looks for flag in method descriptor
+	// looks for flag in method descriptor, returns -1 if it isn't a parameter
 	private int findParameterIndex(IMethod method) {
 		int flagInd = -1;
 		for(int i = 0; i < method.getNumberOfParameters(); ++i) {
 			String param = method.getLocalVariableName(0, i);
 			
-			if(param.equals(flagName)) {
+			if(flagName.equals(param)) {
 				flagInd = i;
 			}
 		}
-
-		if(flagInd == -1) {
-			System.err.println("Error: Flag '" + flagName + "' not found");
-			System.exit(1);
-		}		
 		return flagInd;
 	}
 	
-	private TreeSet<Integer> gatherSlicedLines(Collection<Statement> slice) {
-		TreeSet<Integer> lineNumbers = new TreeSet<Integer>();
-		for (Statement s : slice) {
-			if (s.getKind() == Statement.Kind.NORMAL) { // ignore special kinds of statements
-				int bcIndex, instructionIndex = ((NormalStatement) s).getInstructionIndex();
-				try {
-					bcIndex = ((ShrikeBTMethod) s.getNode().getMethod()).getBytecodeIndex(instructionIndex);
-					try {
-						int srcLineNumber = s.getNode().getMethod().getLineNumber(bcIndex);
-						lineNumbers.add(srcLineNumber);
-					} catch (Exception e) {
-						System.err.println("Bytecode index no good");
-						System.err.println(e.getMessage());
-					}
-				} catch (Exception e) {
-//					System.err.println("it's probably not a BT method (e.g. it's a fakeroot method)");
-//					System.err.println(e.getMessage());
+	// the indices of the flags to slice by - the flag parameter, or all the boolean parameters
+	private List<Integer> findFlagParameters(IMethod method) {
+		List<Integer> flagIndices = new ArrayList<Integer>();
+		if (allFlags) {
+			for(int i = 0; i < method.getNumberOfParameters(); ++i) {
+				if (method.getParameterType(i) == TypeReference.Boolean) {
+					flagIndices.add(i);
 				}
 			}
+			return flagIndices;
+		}
+		
+		int flagInd = findParameterIndex(method);
+		if(flagInd == -1) {
+			throw new InvalidFlagException("Flag '" + flagName + "' not found");
+		}
+		// verify that found param is indeed boolean
+		if(method.getParameterType(flagInd) != TypeReference.Boolean) {
+			throw new InvalidFlagException("Parameter '" + flagName + "' is not boolean");
+		}
+		flagIndices.add(flagInd);
+		return flagIndices;
+	}
+	
+	// lines of a slice given as the indices of the instructions of its statements, by method
+	BitSet gatherSlicedLines(Map<CGNode, BitSet> slice) {
+		BitSet lineNumbers = new BitSet();
+		for (Map.Entry<CGNode, BitSet> entry : slice.entrySet()) {
+			analysis.getLineTable(entry.getKey().getMethod()).addLines(entry.getValue(), lineNumbers);
 		}
-
 		return lineNumbers;
 	}
 	
-	// format result as readable code
-	private String formatSlice(TreeSet<Integer> lineNumbers) {
-		String res = "Slice for: " + this.fileName + " ; " + this.packageName + "."  
-				+ this.className + "." + this.methodName + "; flag name: " + this.flagName + "\n";
-		Iterator<Integer> iter = lineNumbers.iterator();
-		while (iter.hasNext()) {
-			int lineNum = iter.next();
-			if(srcFileLines.size() <= lineNum) {
-				continue;
+	// lines of a slice given as indices of instructions of the method
+	private BitSet gatherSlicedLines(IMethod method, BitSet instructions) {
+		BitSet lineNumbers = new BitSet();
+		analysis.getLineTable(method).addLines(instructions, lineNumbers);
+		return lineNumbers;
+	}
+	
+	// writes the slices as readable code, and the lines shared between the flags
+	void writeSlices(SliceWriter writer, Map<String, BitSet> slices) throws IOException {
+		for (Map.Entry<String, BitSet> entry : slices.entrySet()) {
+			writer.writeHeader("Slice for: " + this.fileName + " ; " + this.packageName + "."  
+					+ this.className + "." + this.methodName + "; flag name: " + entry.getKey() 
+					+ "; analysis: " + this.producedBy);
+			BitSet lineNumbers = entry.getValue();
+			for (int line = lineNumbers.nextSetBit(0); line >= 0; line = lineNumbers.nextSetBit(line + 1)) {
+				writer.writeLine(line, "");
+			}
+		}
+		if (allFlags) {
+			writer.writeHeader("Lines shared between flags:");
+			for (Map.Entry<Integer, List<String>> entry : findSharedLines(slices).entrySet()) {
+				writer.writeLine(entry.getKey(), " " + entry.getValue());
 			}
-			System.out.println("line " + lineNum + ": " + 
-					srcFileLines.get(lineNum-1));
+		}
+	}
+	
+	// the slices as text, codeTrs is the transformer that preprocessed the source (null for bytecode)
+	String getSliceText(JavaCodeTransformer codeTrs, Map<String, BitSet> slices) throws IOException {
+		StringWriter text = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(text, srcFileLines, codeTrs == null ? null : codeTrs.getHelperLines())) {
+			writeSlices(writer, slices);
+		}
+		return text.toString();
+	}
+	
+	private static TreeMap<Integer, List<String>> findSharedLines(Map<String, BitSet> slices) {
+		// the lines in more than one slice are the lines of a slice that are in one of the slices before it
+		BitSet seen = new BitSet();
+		BitSet shared = new BitSet();
+		for (BitSet lines : slices.values()) {
+			BitSet repeated = (BitSet) lines.clone();
+			repeated.and(seen);
+			shared.or(repeated);
+			seen.or(lines);
 		}
 		
-		return res;
+		TreeMap<Integer, List<String>> lineFlags = new TreeMap<Integer, List<String>>();
+		for (int line = shared.nextSetBit(0); line >= 0; line = shared.nextSetBit(line + 1)) {
+			List<String> flags = new ArrayList<String>();
+			for (Map.Entry<String, BitSet> entry : slices.entrySet()) {
+				if (entry.getValue().get(line)) {
+					flags.add(entry.getKey());
+				}
+			}
+			lineFlags.put(line, flags);
+		}
+		return lineFlags;
 	}
 	
-	private String createSlice() throws IOException, ClassHierarchyException, CancelException {
+	static File getExclusionsFile() throws IOException {
 		String path = "./src/slicer/Java60RegressionExclusions.txt";
 		path.replace('/', File.pathSeparatorChar);
 		File f = new File(path);
-		File exFile = new FileProvider().getFile(f.getAbsolutePath());
-		AnalysisScope scope = AnalysisScopeReader.makeJavaBinaryAnalysisScope(jarPath + File.pathSeparator + jarName, exFile);
-		IClassHierarchy cha = ClassHierarchy.make(scope);
-		Iterable<Entrypoint> entrypoints = com.ibm.wala.ipa.callgraph.impl.Util.makeMainEntrypoints(
-				scope, cha, "L" + packageName + "/" + className);
-		AnalysisOptions options = new AnalysisOptions(scope, entrypoints);
-		CallGraphBuilder builder = Util.makeZeroOneCFABuilder(options, new AnalysisCache(), cha, scope);
+		return new FileProvider().getFile(f.getAbsolutePath());
+	}
+	
+	// the sliced lines of every flag
+	private Map<String, BitSet> createSlice() throws IOException, ClassHierarchyException, CancelException {
+		if (allFlags) {
+			// the flags are only known from the method, so these slices aren't looked up
+			try {
+				Map<String, BitSet> slices = computeSliceLines();
+				// with a local fallback for all the flags, a single flag might have been sliced locally
+				if (cache != null && (!localMode || "local".equals(producedBy))) {
+					storeFlagSlices(slices);
+				}
+				return slices;
+			} catch (InvalidFlagException e) {
+				throw e;
+			} catch (IllegalArgumentException | CallGraphBuilderCancelException e) {
+				e.printStackTrace();
+				return new LinkedHashMap<String, BitSet>();
+			}
+		}
+		
+		BitSet resultLines = null;
+		// sliceMethod looks the slice up before preprocessing
+		if (cache != null && cacheKey == null) {
+			SliceCache.CachedSlice cached = lookupCache();
+			if (cached != null) {
+				progress("slice found in cache: " + cacheKey);
+				resultLines = cached.getLines();
+				producedBy = cached.getAnalysis();
+			}
+		}
+		
+		if (resultLines == null) {
+			try {
+				resultLines = computeSliceLines().get(flagName);
+				if (cache != null) {
+					cache.store(cacheKey, overlay.getJarPath(), resultLines, getLineTexts(resultLines), producedBy,
+							classHashes.select(sliceDependencies));
+				}
+			} catch (InvalidFlagException e) {
+				throw e;
+			} catch (IllegalArgumentException | CallGraphBuilderCancelException e) {
+				e.printStackTrace();
+				resultLines = new BitSet();
+			}
+		}
+		
+		Map<String, BitSet> result = new LinkedHashMap<String, BitSet>();
+		result.put(flagName, resultLines);
+		return result;
+	}
+	
+	/*
+	 * Looks the slice up in the cache by the content of what is sliced: the source file that
+	 * is preprocessed (or the class, whose hash is checked with the other classes of the jar,
+	 * for bytecode), and the classes of the original jar. Nothing has to be preprocessed for it.
+	 */
+	private SliceCache.CachedSlice lookupCache() throws IOException {
+		try (SliceMetrics.Phase phase = metrics.phase("cacheLookup")) {
+			classHashes = cache.getClassHashes(new File(jarPath, jarName));
+			cacheKey = makeCacheKey(flagName);
+			return cache.lookup(cacheKey, classHashes);
+		}
+	}
+	
+	private String makeCacheKey(String flag) throws IOException {
+		// the lines of the preprocessed source depend on the methods that got helpers
+		String input = bytecodeMode ? "bytecode" :
+			"source " + SliceCache.hashFile(new File(jarPath, removeExtension(fileName) + ".java")) + " " + preprocessedMethods;
+		return cache.makeKey(input, SliceCache.hashFile(getExclusionsFile()),
+				"L" + packageName + "/" + className, methodName, flag, getSliceMode());
+	}
+	
+	/*
+	 * Caches the slices of all the flags of the method under the key of every flag, since the
+	 * slice of a flag is the same whether it is sliced alone or with the other flags (only the
+	 * name of the helper differs, which isn't in the written lines). A later query of any of
+	 * the flags is then served from the cache.
+	 */
+	private void storeFlagSlices(Map<String, BitSet> slices) throws IOException {
+		classHashes = cache.getClassHashes(new File(jarPath, jarName));
+		Map<String, String> dependencies = classHashes.select(sliceDependencies);
+		for (Map.Entry<String, BitSet> entry : slices.entrySet()) {
+			cache.store(makeCacheKey(entry.getKey()), overlay.getJarPath(), entry.getValue(), getLineTexts(entry.getValue()),
+					producedBy, dependencies);
+		}
+	}
+	
+	// the texts that the lines are written with (see SliceWriter), or null if there is no source
+	private Map<Integer, String> getLineTexts(BitSet lines) {
+		if (srcFileLines == null) {
+			return null;
+		}
+		Map<Integer, String> helperLines = overlay.getHelperLines();
+		Map<Integer, String> texts = new TreeMap<Integer, String>();
+		for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+			if (helperLines.containsKey(line)) {
+				if (helperLines.get(line) != null) {
+					texts.put(line, helperLines.get(line));
+				}
+			} else if (line >= 1 && line <= srcFileLines.size()) {
+				texts.put(line, srcFileLines.get(line - 1));
+			}
+		}
+		return texts;
+	}
+	
+	private Map<String, BitSet> computeSliceLines() throws IOException, ClassHierarchyException, 
+			IllegalArgumentException, CallGraphBuilderCancelException, CancelException {
+		SliceAnalysis analysis;
+		try (SliceMetrics.Phase phase = metrics.phase("classHierarchy")) {
+			analysis = getAnalysis();
+		}
+		if (localMode) {
+			Map<String, BitSet> localLines;
+			try (SliceMetrics.Phase phase = metrics.phase("localSlice")) {
+				localLines = computeLocalSliceLines(analysis);
+			}
+			if (localLines != null) {
+				producedBy = "local";
+				// a local slice depends on the method alone
+				sliceDependencies = Collections.singleton(packageName + "/" + className);
+				return localLines;
+			}
+			progress("slice is not local to the method, computing it on the call graph");
+		}
 		CallGraph cg;
+		try (SliceMetrics.Phase phase = metrics.phase("callGraph")) {
+			cg = analysis.getCallGraph();
+			sliceDependencies = analysis.getDependentClasses();
+		}
+		producedBy = "call graph " + analysis.getTier();
+		countCallGraph(cg);
 		
-		Collection<Statement> result = new LinkedHashSet<Statement>();
-		// gather statements in order to be able to process function end
-        Collection<SSAInstruction> funcEnd = new LinkedHashSet<SSAInstruction>();    
+		Atom name = Atom.findOrCreateUnicodeAtom(methodName);
 		
-        TreeSet<Integer> resultLines = new TreeSet<Integer>();
-        
-		try {
-			cg = builder.makeCallGraph(options, null);
-			Atom name = Atom.findOrCreateUnicodeAtom(methodName);
-			
+		// the statements inside the branches of the flags and the statements of
+		// the function end are all sliced in the same pass. A statement that is a
+		// seed of several flags is a single seed.
+		List<FlagSeeds> flags;
+		List<Statement> seeds = new ArrayList<Statement>();
+		Map<Integer, Integer> seedIndices = new HashMap<Integer, Integer>();
+		List<BitSet> branchSeeds = new ArrayList<BitSet>();
+		List<List<Integer>> endSeeds = new ArrayList<List<Integer>>();
+		try (SliceMetrics.Phase phase = metrics.phase("seeds")) {
 			// get first method with the input name
 			CGNode node = findMethod(cg, name);
-			IMethod method = node.getMethod();
-			int flagInd = findParameterIndex(method);
-			
-			// verify that found param is indeed boolean
-			TypeReference type = method.getParameterType(flagInd);
-			if(type != TypeReference.Boolean) {
-				System.err.println("Error: Parameter is not boolean");
-				System.exit(1);
-			}
-			
 			IR ir = node.getIR();
-			int paramLoc = ir.getSymbolTable().getParameter(flagInd);
-	        int start = -1;
-	        int end = -1;
-			// search for branch instructions that are affected by our flag
-		    for (Iterator<SSAInstruction> it = ir.iterateAllInstructions(); it.hasNext();) {
-		        SSAInstruction s = it.next();
-		     
-		        funcEnd.add(s);
-		        
-		        // find branch statements that are affected by flag parameter
-		        if (s instanceof SSAConditionalBranchInstruction) {
-		        	SSAConditionalBranchInstruction branch = (SSAConditionalBranchInstruction) s;
-		        	if(branch.getUse(0) == paramLoc) {
-		        		start = branch.iindex + 1;
-		        		end = branch.getTarget();
-		        		continue;
-		        	}
-		        	
-		        	funcEnd.clear();
-		        }
-		        
-	            // compute forward and backward slice for all statements inside branch
-	        	if(start <= s.iindex && s.iindex < end) {
-	        		processStatement(builder, cg, node, s, result);
-	        	}
-		      }
+			flags = collectSeeds(node.getMethod(), ir);
+			for (FlagSeeds flag : flags) {
+				BitSet branch = new BitSet();
+				for(SSAInstruction s : flag.branchInstructions) {
+					branch.set(addStatement(node, s, seeds, seedIndices));
+				}
+				branchSeeds.add(branch);
+				List<Integer> end = new ArrayList<Integer>();
+				for(SSAInstruction s : flag.funcEnd) {
+					end.add(addStatement(node, s, seeds, seedIndices));
+				}
+				endSeeds.add(end);
+			}
+		}
+		metrics.count("seeds", seeds.size());
+		
+		MultiSeedSlicer.SliceResult slice;
+		try (SliceMetrics.Phase phase = metrics.phase("slice")) {
+			slice = analysis.getSlicer(DATA_OPTIONS, CONTROL_OPTIONS).computeBackwardSlice(seeds);
+		}
+		countSlice(slice.getSlice());
+		// the memo is shared by all the slices over the analysis, so these count since it was built
+		metrics.count("memoHits", analysis.getMemo().getHits());
+		metrics.count("memoMisses", analysis.getMemo().getMisses());
+		metrics.count("memoWeight", analysis.getMemo().getWeight());
 
+		Map<String, BitSet> lines;
+		try (SliceMetrics.Phase phase = metrics.phase("lines")) {
+			lines = gatherFlagLines(flags, slice, branchSeeds, endSeeds);
+		}
+		if (analysis.releaseIfOverBudget()) {
+			progress("released the least recently used IRs and SDGs to stay within the memory budget");
+		}
+		return lines;
+	}
+	
+	/*
+	 * The lines of the slice of every flag, with the lines of the function end that depend on it.
+	 * The lines of the slice of every seed are gathered in a single pass over the statements of
+	 * the slice, so the function end is checked on lines alone, without slicing or traversing
+	 * the SDG again (see addDependentLines).
+	 * There is no forward slice from the flag: the tabulation of all the seeds already records
+	 * which function end statements reach every statement, which is the same dependence read
+	 * the other way, and a forward slice couldn't follow the in-order growth of the lines that
+	 * decides which statements depend on the slice.
+	 */
+	private Map<String, BitSet> gatherFlagLines(List<FlagSeeds> flags, MultiSeedSlicer.SliceResult slice, 
+			List<BitSet> branchSeeds, List<List<Integer>> endSeeds) {
+		List<BitSet> seedLines = getSeedLines(slice);
+		Map<String, BitSet> result = new LinkedHashMap<String, BitSet>();
+		for (int i = 0; i < flags.size(); ++i) {
 	        // lines of slice computed so far
-	        resultLines = gatherSlicedLines(result);     
-
-	        // check if end of function depends on statements 
-	        // in the computed slice
-	        for(SSAInstruction s : funcEnd) {
-	        	Collection<Statement> tmpSlice = 
-	        			new LinkedHashSet<Statement>();
-	        	processStatement(builder, cg, node, s, tmpSlice);
-
-		        TreeSet<Integer> tmpLines = gatherSlicedLines(tmpSlice);	
-		        
-		        for(Integer i : tmpLines) {
-		        	// if line depends on some line in the slice, all the 
-		        	// lines it depends on should be added
-		        	if(resultLines.contains(i)) {
-		        		resultLines.addAll(tmpLines);
-		        		break;
-		        	}
-		        }
+	        BitSet resultLines = new BitSet();
+	        BitSet branch = branchSeeds.get(i);
+	        for (int seed = branch.nextSetBit(0); seed >= 0; seed = branch.nextSetBit(seed + 1)) {
+	        	resultLines.or(seedLines.get(seed));
 	        }
-			
-		} catch (IllegalArgumentException | CallGraphBuilderCancelException e) {
-			e.printStackTrace();
-		}	
+	        List<BitSet> endLines = new ArrayList<BitSet>();
+	        for (Integer seed : endSeeds.get(i)) {
+	        	endLines.add(seedLines.get(seed));
+	        }
+	        addDependentLines(resultLines, endLines);
+	        result.put(flags.get(i).flagName, resultLines);
+		}
+		
+		return result;
+	}
+	
+	// the lines of the slice of every seed of the slice (by the index of the seed)
+	private List<BitSet> getSeedLines(MultiSeedSlicer.SliceResult slice) {
+		List<BitSet> seedLines = new ArrayList<BitSet>();
+		for (int i = 0; i < slice.getSeeds().size(); ++i) {
+			seedLines.add(new BitSet());
+		}
+		for (Statement s : slice.getSlice()) {
+			if (s.getKind() != Statement.Kind.NORMAL) { // ignore special kinds of statements
+				continue;
+			}
+			int line = analysis.getLineTable(s.getNode().getMethod()).getLine(((NormalStatement) s).getInstructionIndex());
+			if (line == LineTable.NO_LINE) {
+				continue;
+			}
+			BitSet seeds = slice.getReachingSeeds(s);
+			for (int seed = seeds.nextSetBit(0); seed >= 0; seed = seeds.nextSetBit(seed + 1)) {
+				seedLines.get(seed).set(line);
+			}
+		}
+		return seedLines;
+	}
+	
+	/*
+	 * Adds the lines of the slices of the function end statements that depend on the slice: in
+	 * the order of the statements, the lines of a statement are added if they share a line with
+	 * the lines added so far. Every statement is checked once, by a single intersection of lines.
+	 */
+	static void addDependentLines(BitSet resultLines, List<BitSet> endLines) {
+		for (BitSet lines : endLines) {
+			addIfDependent(resultLines, lines);
+		}
+	}
+	
+	private void countCallGraph(CallGraph cg) {
+		long edges = 0;
+		for (CGNode n : cg) {
+			edges += cg.getSuccNodeCount(n);
+		}
+		metrics.count("callGraphNodes", cg.getNumberOfNodes());
+		metrics.count("callGraphEdges", edges);
+	}
+	
+	/*
+	 * The SDG is built lazily, and counting all of its nodes would build the PDGs of the whole
+	 * call graph, so its size is measured by the part of it the slice reached: the statements
+	 * of the slice, and the methods whose PDGs were built for them.
+	 */
+	private void countSlice(Collection<Statement> slice) {
+		Set<CGNode> nodes = new HashSet<CGNode>();
+		for (Statement s : slice) {
+			nodes.add(s.getNode());
+		}
+		metrics.count("sliceStatements", slice.size());
+		metrics.count("sliceMethods", nodes.size());
+	}
+	
+	// returns the index of the statement of s in seeds, adding it if it isn't there yet
+	private static int addStatement(CGNode node, SSAInstruction s, List<Statement> seeds, Map<Integer, Integer> seedIndices) {
+		Integer index = seedIndices.get(s.iindex);
+		if (index == null) {
+			index = seeds.size();
+			seeds.add(new NormalStatement(node, s.iindex));
+			seedIndices.put(s.iindex, index);
+		}
+		return index;
+	}
+	
+	/*
+	 * Computes the slices from the IR of the method alone, without building the call graph.
+	 * Returns null if a slice depends on other methods or on the heap.
+	 */
+	private Map<String, BitSet> computeLocalSliceLines(SliceAnalysis analysis) {
+		IMethod method = analysis.findMethod("L" + packageName + "/" + className, methodName);
+		if (method == null) {
+			return null;
+		}
+		IR ir = analysis.getIR(method);
+		List<FlagSeeds> flags = collectSeeds(method, ir);
 		
-		return formatSlice(resultLines);
+		LocalSlicer localSlicer = new LocalSlicer(analysis.getClassHierarchy(), ir);
+		// the lines of the function end statements, which the flags share
+		Map<Integer, BitSet> seedLines = new HashMap<Integer, BitSet>();
+		Map<String, BitSet> result = new LinkedHashMap<String, BitSet>();
+		for (FlagSeeds flag : flags) {
+			BitSet branchSlice = new BitSet();
+			for(SSAInstruction s : flag.branchInstructions) {
+				BitSet slice = localSlicer.computeBackwardSlice(s.iindex);
+				if (slice == null) {
+					return null;
+				}
+				branchSlice.or(slice);
+			}
+			BitSet resultLines = gatherSlicedLines(method, branchSlice);
+			
+			for(SSAInstruction s : flag.funcEnd) {
+				BitSet lines = seedLines.get(s.iindex);
+				if (lines == null) {
+					BitSet slice = localSlicer.computeBackwardSlice(s.iindex);
+					if (slice == null) {
+						return null;
+					}
+					lines = gatherSlicedLines(method, slice);
+					seedLines.put(s.iindex, lines);
+				}
+				addIfDependent(resultLines, lines);
+			}
+			result.put(flag.flagName, resultLines);
+		}
+		return result;
 	}
 	
-	private void processStatement(CallGraphBuilder builder, 
-			CallGraph cg, CGNode node, SSAInstruction s,
-			Collection<Statement> collect) throws IllegalArgumentException, CancelException {
-		Statement statement = new NormalStatement(node, s.iindex);
+	/*
+	 * Finds, for every flag, the instructions inside the branches of the flag (branchInstructions),
+	 * and the instructions after the last branch that doesn't depend on the flag (funcEnd).
+	 * The instructions are scanned once for all the flags.
+	 */
+	List<FlagSeeds> collectSeeds(IMethod method, IR ir) {
+		List<Integer> flagIndices = findFlagParameters(method);
+		int flagCount = flagIndices.size();
+		List<FlagSeeds> flags = new ArrayList<FlagSeeds>();
+		int[] paramLoc = new int[flagCount];
+		int[] start = new int[flagCount];
+		int[] end = new int[flagCount];
+		for (int f = 0; f < flagCount; ++f) {
+			int flagInd = flagIndices.get(f);
+			String name = method.getLocalVariableName(0, flagInd);
+			flags.add(new FlagSeeds(name != null ? name : "parameter " + flagInd));
+			paramLoc[f] = ir.getSymbolTable().getParameter(flagInd);
+			start[f] = -1;
+			end[f] = -1;
+		}
 		
+		// search for branch instructions that are affected by our flags
+	    for (Iterator<SSAInstruction> it = ir.iterateAllInstructions(); it.hasNext();) {
+	        SSAInstruction s = it.next();
+	     
+	        for (FlagSeeds flag : flags) {
+	        	addSeed(s, flag.funcEnd);
+	        }
+	        
+	        // find branch statements that are affected by flag parameter
+	        int branchFlag = -1;
+	        if (s instanceof SSAConditionalBranchInstruction) {
+	        	SSAConditionalBranchInstruction branch = (SSAConditionalBranchInstruction) s;
+	        	for (int f = 0; f < flagCount; ++f) {
+	        		if(branch.getUse(0) == paramLoc[f]) {
+	        			branchFlag = f;
+	        			start[f] = branch.iindex + 1;
+	        			end[f] = branch.getTarget();
+	        		}
+	        	}
+	        	
+	        	// a branch on one flag doesn't depend on the other flags
+	        	for (int f = 0; f < flagCount; ++f) {
+	        		if (f != branchFlag) {
+	        			flags.get(f).funcEnd.clear();
+	        		}
+	        	}
+	        }
+	        
+	        // compute forward and backward slice for all statements inside branch
+	        for (int f = 0; f < flagCount; ++f) {
+	        	if(f != branchFlag && start[f] <= s.iindex && s.iindex < end[f]) {
+	        		addSeed(s, flags.get(f).branchInstructions);
+	        	}
+	        }
+	    }
+	    return flags;
+	}
+	
+	private static void addSeed(SSAInstruction s, List<SSAInstruction> seeds) {
 		// don't process invalid instructions
 		if(s.iindex == -1) {
 			return;
 		}
-
-		// add current statement
-		collect.add(statement);
-		Collection<Statement> computeBackwardSlice = 
-				Slicer.computeBackwardSlice(statement, cg, builder.getPointerAnalysis(),
-						DataDependenceOptions.FULL, ControlDependenceOptions.NONE);
-		
-		collect.addAll(computeBackwardSlice);
+		seeds.add(s);
+	}
+	
+	// if a line depends on some line in the slice, all the lines it depends on should be added
+	private static void addIfDependent(BitSet resultLines, BitSet tmpLines) {
+		if (resultLines.intersects(tmpLines)) {
+			resultLines.or(tmpLines);
+		}
 	}
 
 	
-	private static CGNode findMethod(CallGraph cg, Atom name) {
+	static CGNode findMethod(CallGraph cg, Atom name) {
 		for (Iterator<? extends CGNode> it = cg.getSuccNodes(cg.getFakeRootNode()); it.hasNext();) {
 			CGNode n = it.next();
 			if (n.getMethod().getName().equals(name)) {
@@ -313,32 +744,109 @@ public class FlagSlicer {
 		return null;
 	}
 	
-	public void writeSlice(String slice) throws IOException {
-		File file = new File(this.outputSlicePath);
-		FileWriter writer = new FileWriter(file);
-		writer.write(slice);
-		writer.close();
+	static void progress(String message) {
+		if (verbose) {
+			System.out.println(message);
+		}
+	}
+	
+	// the name of the helper that preprocessing adds for the flag
+	static String helperName(String flag) {
+		return (ALL_FLAGS.equals(flag) ? "flags" : flag) + "_temp";
+	}
+	
+	static String removeExtension(String name) {
+		return name.substring(0, name.lastIndexOf('.'));
 	}
 	
-	public void sliceMethod() throws ParseException, IOException, ClassHierarchyException, CancelException, InterruptedException {
+	public void sliceMethod() throws ParseException, IOException, ClassHierarchyException, CancelException {
+		// a cached slice is written from the cache alone, without preprocessing anything
+		if (cache != null && !allFlags) {
+			SliceCache.CachedSlice cached = lookupCache();
+			if (cached != null) {
+				progress("slice found in cache: " + cacheKey);
+				writeCachedResult(cached);
+				return;
+			}
+		}
+		
 		// 1. preprocess the code
-		String flagHelperName = this.flagName + "_temp";
-		JavaCodeTransformer codeTrs = new JavaCodeTransformer();
-		String jarNameNoExtension = this.jarName.substring(0, this.jarName.lastIndexOf('.'));
-		String fileNameNoExtension = this.fileName.substring(0, this.fileName.lastIndexOf('.'));
-		String res = codeTrs.Preprocess(this.jarPath, jarNameNoExtension, fileNameNoExtension, this.className, 
-				this.methodName, this.flagName, flagHelperName);
-		Path path = Paths.get(res);
-		this.newJarName = path.getFileName().toString();
-		this.newJarPath = path.getParent().toString();
+		JavaCodeTransformer codeTrs = null;
+		ClassOverlay res;
+		try (SliceMetrics.Phase phase = metrics.phase("preprocess")) {
+			if (bytecodeMode) {
+				res = new BytecodeInstrumenter().instrument(this.jarPath, removeExtension(this.jarName),
+						removeExtension(this.fileName), this.packageName, this.className, Arrays.asList(this.methodName));
+			} else {
+				String flagHelperName = helperName(this.flagName);
+				codeTrs = new JavaCodeTransformer();
+				res = codeTrs.Preprocess(this.jarPath, removeExtension(this.jarName), removeExtension(this.fileName), 
+						this.className, this.methodName, this.flagName, flagHelperName);
+			}
+		}
+		// an analysis this slice builds is used by it alone
+		boolean ownsAnalysis = analysis == null;
+		try {
+			slicePreprocessed(codeTrs, res);
+		} finally {
+			if (ownsAnalysis) {
+				SliceAnalysis.close(analysis);
+				analysis = null;
+			}
+		}
+	}
+	
+	// slices the method after its code was preprocessed by codeTrs (null for bytecode) into preprocessed
+	void slicePreprocessed(JavaCodeTransformer codeTrs, ClassOverlay preprocessed) 
+			throws IOException, ClassHierarchyException, CancelException {
+		writeResult(codeTrs, computeSlice(preprocessed));
+	}
+	
+	/*
+	 * Computes the sliced lines without writing anything, so that slicers sharing an analysis
+	 * can compute their slices concurrently.
+	 */
+	Map<String, BitSet> computeSlice(ClassOverlay preprocessed) throws IOException, ClassHierarchyException, CancelException {
+		this.overlay = preprocessed;
 		// 2. upload it to memory
 		uploadFileToMem();
 		// 3. perform slicing
-		String slice = createSlice();
-		// 4. write the slice to a file
-		writeSlice(slice);
-		// 4. postprocess the slice
-		codeTrs.Postprocess(this.outputSlicePath);
+		return createSlice();
+	}
+	
+	void writeResult(JavaCodeTransformer codeTrs, Map<String, BitSet> slices) throws IOException {
+		// 4. write the slice to a file, without the helpers (which aren't in the source when the bytecode was changed)
+		writeResult(codeTrs == null ? null : codeTrs.getHelperLines(), slices);
+	}
+	
+	// the lines of a cached slice are written with their cached texts, there is no source
+	private void writeCachedResult(SliceCache.CachedSlice cached) throws IOException {
+		producedBy = cached.getAnalysis();
+		srcFileLines = null;
+		BitSet lines = cached.getLines();
+		if (cached.getTexts() != null) {
+			// with a source, only the lines that have a text were written
+			lines = new BitSet();
+			for (Integer line : cached.getTexts().keySet()) {
+				lines.set(line);
+			}
+		}
+		Map<String, BitSet> result = new LinkedHashMap<String, BitSet>();
+		result.put(flagName, lines);
+		writeResult(cached.getTexts(), result);
+	}
+	
+	private void writeResult(Map<Integer, String> lineTexts, Map<String, BitSet> slices) throws IOException {
+		try (SliceMetrics.Phase phase = metrics.phase("write");
+				SliceWriter writer = SliceWriter.open(Paths.get(this.outputSlicePath), srcFileLines, lineTexts)) {
+			writeSlices(writer, slices);
+		}
+		if (writeMetrics) {
+			Map<String, String> labels = new LinkedHashMap<String, String>();
+			labels.put("method", this.packageName + "." + this.className + "." + this.methodName);
+			labels.put("flag", this.flagName);
+			metrics.write(this.outputSlicePath, labels);
+		}
 	}
 	
 	public static void main(String args[]) {
@@ -350,13 +858,161 @@ public class FlagSlicer {
 		options.addOption("c", "className", true, "The name of the class containing the method to slice");
 		options.addOption("m", "methodName", true, "The name of the method to slice");
 		options.addOption("l", "flagName", true, "The name of the flag (and input parameter of the method) according to which to slice");
+		options.addOption("a", "allFlags", false, "Optional. Slice by every boolean parameter of the method instead of a single flag, " + 
+				"and report the lines shared between the flags (equivalent to the flag name '" + ALL_FLAGS + "')");
 		options.addOption("o", "outputPath", true, "The path to the output file which will contain the slice (the file should not exist yet)");
+		options.addOption("b", "batch", true, "Slice all the queries listed in the given manifest file ('-' for stdin) instead of a single method. " + 
+				"Each line holds, separated by tabs: jarPath jarFileName fileName packageName className methodName flagName outputPath");
+		options.addOption("x", "serve", true, "Serve slice requests on the given TCP port of the loopback interface instead of slicing. " + 
+				"Every request is a line holding a JSON object with the fields of a query (the long option names) and the token of the server");
+		options.addOption("u", "maxAnalyses", true, "Optional. The number of analyses the server keeps resident (default 4)");
+		options.addOption("T", "tokenFile", true, "Optional. The file the server writes the token of its requests to, readable by the user alone " + 
+				"(default .flagslicer-token in the home directory)");
+		options.addOption("O", "outputDir", true, "Optional. The directory the server's requests may write their output under, " + 
+				"as a path relative to it (by default requests can't write outputs)");
+		options.addOption("C", "maxClients", true, "Optional. The number of clients the server serves at once (default " + 
+				SliceServer.DEFAULT_MAX_CLIENTS + ")");
+		options.addOption("n", "buildSnapshot", true, "Build a snapshot of the JDK classes that aren't excluded from the analysis in the given file, " + 
+				"and exit. Pass it to later runs with -q");
+		options.addOption("F", "indexFlags", true, "Index the boolean parameters that branches depend on in every class of the jar given by " + 
+				"-p and -j, keep the index in the given directory, write a batch manifest (see -b) slicing all of them to -o " + 
+				"(or stdout), and exit. -w sets the number of classes scanned concurrently (default the number of processors)");
+		options.addOption("q", "snapshot", true, "Optional. Read the JDK classes from the given snapshot (built with -n) instead of from the JDK");
+		options.addOption("i", "local", false, "Optional. Slice from the IR of the method alone when the flag only affects its locals, " + 
+				"and build the call graph only if the slice leaves the method");
+		options.addOption("y", "bytecode", false, "Optional. Add the flag helper to the bytecode of the method instead of to its source, " + 
+				"so no source parsing or compilation is needed");
+		options.addOption("w", "workers", true, "Optional. In batch mode, the number of queries of the same class that are sliced concurrently (default 1)");
+		options.addOption("t", "tier", true, "Optional. The most precise call graph to build: cha, rta, 0-cfa, 0-1-cfa (default) or container");
+		options.addOption("r", "timeBudget", true, "Optional. Seconds a call graph tier may run before it is cancelled and the next cheaper tier is used");
+		options.addOption("g", "heapBudgetMB", true, "Optional. Heap (in MB) a call graph tier may use before it is cancelled and the next cheaper tier is used");
+		options.addOption("V", "verbose", false, "Optional. Write progress messages to the standard output");
+		options.addOption("e", "metrics", false, "Optional. Write the time, CPU time, allocation and heap of every phase, and the sizes " + 
+				"of the analysis, next to the output file (as <outputPath>.metrics.json and <outputPath>.prom)");
+		options.addOption("z", "memoStatements", true, "Optional. The number of statements of the slices of single statements " + 
+				"that an analysis keeps, to compose later slices from (default " + SliceMemo.DEFAULT_MAX_WEIGHT + ", 0 to keep none)");
+		options.addOption("v", "memoryBudgetMB", true, "Optional. Heap (in MB) the analysis should stay within: call graph tiers " + 
+				"without a heap budget are bounded by it, IRs and SDGs are released and rebuilt on demand, and batch queries are sliced one at a time");
+		options.addOption("d", "cacheDir", true, "Optional. Directory in which slices of unchanged jars are cached between runs");
+		options.addOption("s", "cacheSizeMB", true, "Optional. Maximal size of the cache directory in MB (default " + 
+				SliceCache.DEFAULT_MAX_BYTES / (1024 * 1024) + ")");
 		
 		CommandLineParser parser = new DefaultParser();
 		CommandLine cmd;
 		try {
 			cmd = parser.parse(options,  args);
 			HelpFormatter help = new HelpFormatter();
+			verbose = cmd.hasOption("V");
+			
+			SliceCache cache = null;
+			if (cmd.hasOption("d")) {
+				long cacheSize = SliceCache.DEFAULT_MAX_BYTES;
+				if (cmd.hasOption("s")) {
+					cacheSize = Long.parseLong(cmd.getOptionValue("s")) * 1024 * 1024;
+				}
+				cache = new SliceCache(new File(cmd.getOptionValue("d")), cacheSize);
+			}
+			
+			CallGraphTier tier = CallGraphTier.DEFAULT;
+			if (cmd.hasOption("t")) {
+				tier = CallGraphTier.fromName(cmd.getOptionValue("t"));
+			}
+			long timeBudget = 0;
+			if (cmd.hasOption("r")) {
+				timeBudget = Long.parseLong(cmd.getOptionValue("r")) * 1000;
+			}
+			long heapBudget = 0;
+			if (cmd.hasOption("g")) {
+				heapBudget = Long.parseLong(cmd.getOptionValue("g")) * 1024 * 1024;
+			}
+			long memoryBudget = 0;
+			if (cmd.hasOption("v")) {
+				memoryBudget = Long.parseLong(cmd.getOptionValue("v")) * 1024 * 1024;
+			}
+			long memoWeight = SliceMemo.DEFAULT_MAX_WEIGHT;
+			if (cmd.hasOption("z")) {
+				memoWeight = Long.parseLong(cmd.getOptionValue("z"));
+			}
+			
+			if (cmd.hasOption("n")) {
+				PrimordialSnapshot.build(new File(cmd.getOptionValue("n")), getExclusionsFile());
+				return;
+			}
+			if (cmd.hasOption("F")) {
+				if (!cmd.hasOption("p") || !cmd.hasOption("j")) {
+					help.printHelp("flagSlicer", options);
+					System.exit(1);
+				}
+				int workers = Runtime.getRuntime().availableProcessors();
+				if (cmd.hasOption("w")) {
+					workers = Integer.parseInt(cmd.getOptionValue("w"));
+				}
+				FlagIndex index = FlagIndex.load(new File(cmd.getOptionValue("F")), 
+						new File(cmd.getOptionValue("p"), cmd.getOptionValue("j")), workers);
+				System.err.println("indexed " + index.getFlags().size() + " flags of " + cmd.getOptionValue("j"));
+				if (cmd.hasOption("o")) {
+					File manifest = new File(cmd.getOptionValue("o"));
+					File outputDir = manifest.getAbsoluteFile().getParentFile();
+					try (Writer writer = Files.newBufferedWriter(manifest.toPath(), StandardCharsets.UTF_8)) {
+						index.writeManifest(writer, cmd.getOptionValue("p"), cmd.getOptionValue("j"), outputDir);
+					}
+				} else {
+					Writer writer = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+					index.writeManifest(writer, cmd.getOptionValue("p"), cmd.getOptionValue("j"), new File("."));
+					writer.flush();
+				}
+				return;
+			}
+			File snapshot = null;
+			if (cmd.hasOption("q")) {
+				snapshot = new File(cmd.getOptionValue("q"));
+			}
+			
+			if (cmd.hasOption("x")) {
+				int maxAnalyses = 4;
+				if (cmd.hasOption("u")) {
+					maxAnalyses = Integer.parseInt(cmd.getOptionValue("u"));
+				}
+				int maxClients = SliceServer.DEFAULT_MAX_CLIENTS;
+				if (cmd.hasOption("C")) {
+					maxClients = Integer.parseInt(cmd.getOptionValue("C"));
+				}
+				File tokenFile = new File(System.getProperty("user.home"), ".flagslicer-token");
+				if (cmd.hasOption("T")) {
+					tokenFile = new File(cmd.getOptionValue("T"));
+				}
+				SliceServer server = new SliceServer(Integer.parseInt(cmd.getOptionValue("x")), tokenFile, maxAnalyses, 
+						maxClients, cache);
+				if (cmd.hasOption("O")) {
+					server.setOutputDirectory(new File(cmd.getOptionValue("O")));
+				}
+				server.setLocalMode(cmd.hasOption("i"));
+				server.setPrimordialSnapshot(snapshot);
+				server.setPrecision(tier, timeBudget, heapBudget);
+				server.setMemoWeight(memoWeight);
+				server.setMemoryBudget(memoryBudget);
+				server.serve();
+				return;
+			}
+			
+			if (cmd.hasOption("b")) {
+				BatchSlicer batch = new BatchSlicer(cache);
+				batch.setLocalMode(cmd.hasOption("i"));
+				batch.setPrimordialSnapshot(snapshot);
+				batch.setBytecodeMode(cmd.hasOption("y"));
+				batch.setWriteMetrics(cmd.hasOption("e"));
+				if (cmd.hasOption("w")) {
+					batch.setParallelism(Integer.parseInt(cmd.getOptionValue("w")));
+				}
+				batch.setPrecision(tier, timeBudget, heapBudget);
+				batch.setMemoWeight(memoWeight);
+				batch.setMemoryBudget(memoryBudget);
+				batch.readManifest(cmd.getOptionValue("b"));
+				if (!batch.sliceAll()) {
+					System.exit(1);
+				}
+				return;
+			}
 			
 			String jarPath = "";
 			if (cmd.hasOption("p")) {
@@ -407,7 +1063,9 @@ public class FlagSlicer {
 			}
 			
 			String flagName = "";
-			if (cmd.hasOption("l")) {
+			if (cmd.hasOption("a")) {
+				flagName = ALL_FLAGS;
+			} else if (cmd.hasOption("l")) {
 				flagName = cmd.getOptionValue("l");
 			} else {
 				help.printHelp("flagSlicer", options);
@@ -423,13 +1081,24 @@ public class FlagSlicer {
 			}
 			
 			FlagSlicer t = new FlagSlicer(jarPath, jarFileName, fileName, packageName, className, methodName, flagName, outputPath);
+			t.setCache(cache);
+			t.setLocalMode(cmd.hasOption("i"));
+			t.setPrimordialSnapshot(snapshot);
+			t.setBytecodeMode(cmd.hasOption("y"));
+			t.setWriteMetrics(cmd.hasOption("e"));
+			t.setPrecision(tier, timeBudget, heapBudget);
+			t.setMemoWeight(memoWeight);
+			t.setMemoryBudget(memoryBudget);
 			t.sliceMethod();
 
 		} catch (org.apache.commons.cli.ParseException e) {
 			// TODO Auto-generated catch block
 			System.err.println("failed to parse arguments: " + e.getMessage());
 			e.printStackTrace();
-		} catch (ClassHierarchyException  | IOException | CancelException | ParseException | InterruptedException e) {
+		} catch (IllegalArgumentException e) {
+			System.err.println("invalid argument: " + e.getMessage());
+			System.exit(1);
+		} catch (ClassHierarchyException  | IOException | CancelException | ParseException e) {
 			// TODO Auto-generated catch block
 			System.err.println("Error: can't slice program");
 			System.err.println(e.getMessage());
@@ -0,0 +1,130 @@
+package slicer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/*
+ * Compiles Java source held in memory, and keeps the resulting class files in memory as well.
+ * Nothing is written to disk - the compiler reads the source from a string, and writes every
+ * class through a forwarding file manager into a byte array.
+ */
+public class InMemoryCompiler {
+	private static class SourceFile extends SimpleJavaFileObject {
+		private final String code;
+
+		SourceFile(String path, String code) {
+			super(URI.create("string:///" + path), Kind.SOURCE);
+			this.code = code;
+		}
+
+		@Override
+		public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+			return code;
+		}
+	}
+
+	private static class ClassFile extends SimpleJavaFileObject {
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		ClassFile(String className) {
+			super(URI.create("bytes:///" + className.replace('.', '/') + Kind.CLASS.extension), Kind.CLASS);
+		}
+
+		@Override
+		public OutputStream openOutputStream() {
+			return bytes;
+		}
+
+		byte[] getBytes() {
+			return bytes.toByteArray();
+		}
+	}
+
+	private static class ClassCapturingFileManager extends ForwardingJavaFileManager<StandardJavaFileManager> {
+		// compiled classes by their binary name, in the order they were written
+		private final Map<String, ClassFile> classes = new LinkedHashMap<String, ClassFile>();
+
+		ClassCapturingFileManager(StandardJavaFileManager fileManager) {
+			super(fileManager);
+		}
+
+		@Override
+		public JavaFileObject getJavaFileForOutput(JavaFileManager.Location location, String className,
+				JavaFileObject.Kind kind, FileObject sibling) {
+			ClassFile classFile = new ClassFile(className);
+			classes.put(className, classFile);
+			return classFile;
+		}
+	}
+
+	/*
+	 * Compiles the source of the given compilation unit (e.g. example/Test.java), and returns
+	 * the bytes of all the classes defined in it by their binary name (e.g. example.Test$1).
+	 * classPath may be null.
+	 */
+	public Map<String, byte[]> compile(String sourcePath, String sourceCode, String classPath) throws IOException {
+		return compile(Collections.singletonMap(sourcePath, sourceCode), classPath);
+	}
+
+	// compiles several compilation units together, so that they can refer to each other
+	public Map<String, byte[]> compile(Map<String, String> sourceCodes, String classPath) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			throw new IOException("no system java compiler - run on a JDK");
+		}
+
+		DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+		ClassCapturingFileManager fileManager =
+				new ClassCapturingFileManager(compiler.getStandardFileManager(diagnostics, null, null));
+		List<String> options = new ArrayList<String>();
+		options.add("-g");
+		if (classPath != null) {
+			options.add("-classpath");
+			options.add(classPath);
+		}
+		List<SourceFile> sources = new ArrayList<SourceFile>();
+		for (Map.Entry<String, String> entry : sourceCodes.entrySet()) {
+			sources.add(new SourceFile(entry.getKey(), entry.getValue()));
+		}
+		boolean success;
+		try {
+			success = compiler.getTask(null, fileManager, diagnostics, options, null, sources).call();
+		} finally {
+			fileManager.close();
+		}
+
+		if (!success) {
+			StringBuilder sb = new StringBuilder("failed to compile " + sourceCodes.keySet() + ":");
+			for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics()) {
+				if (d.getKind() == Diagnostic.Kind.ERROR) {
+					sb.append("\n  line " + d.getLineNumber() + ": " + d.getMessage(null));
+				}
+			}
+			throw new IOException(sb.toString());
+		}
+
+		Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+		for (Map.Entry<String, ClassFile> entry : fileManager.classes.entrySet()) {
+			result.put(entry.getKey(), entry.getValue().getBytes());
+		}
+		return result;
+	}
+}
@@ -1,18 +1,16 @@
 package slicer;
 
 import java.io.*;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Arrays;
-import java.util.jar.*;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParseException;
@@ -22,13 +20,14 @@ import com.github.javaparser.ast.expr.*;
 import com.github.javaparser.ast.expr.BinaryExpr.Operator;
 import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.type.PrimitiveType;
+import com.github.javaparser.ast.visitor.DumpVisitor;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
 
-import javax.tools.*;
-
 
 public class JavaCodeTransformer {
-	String flagHelperName;
+	List<String> flagHelperNames = new ArrayList<String>();
+	// the lines of the changed source that hold flag helpers, without them (see getHelperLines)
+	Map<Integer, String> helperLines = new HashMap<Integer, String>();
 	
 	public class ParsingInfo {
 		public ParsingInfo(String className, String methodName, String flagHelperName) {
@@ -45,8 +44,6 @@ public class JavaCodeTransformer {
 	private static class MethodChangerVisitor extends VoidVisitorAdapter {
 	    @Override
 	    public void visit(ClassOrInterfaceDeclaration n, Object arg) {
-	    	System.out.println(n.getName());
-	    	
 	    	ParsingInfo parseInfo = (ParsingInfo) arg;
 	    	if (n.getName().equals(parseInfo.className)) {
 	    		List<BodyDeclaration> members = n.getMembers();
@@ -60,12 +57,11 @@ public class JavaCodeTransformer {
 
 	    @Override
 		public void visit(MethodDeclaration n, Object arg) {
-	    	System.out.println(n.getName());
 	    	ParsingInfo parseInfo = (ParsingInfo) arg;
 
 	    	if (n.getName().equals(parseInfo.methodName)) {
 	    		visit(n.getBody(), arg);
-	    		System.out.println("adding temp statement");
+	    		FlagSlicer.progress("adding " + parseInfo.flagHelperName + " to " + n.getName());
 	    	    addStmtToMethodBody(n, parseInfo);
 	    	}
 
@@ -86,6 +82,10 @@ public class JavaCodeTransformer {
 	    	ParsingInfo parseInfo = (ParsingInfo) arg;
 	    	NameExpr flagHelper = new NameExpr(parseInfo.flagHelperName);
 	    	for (int i = 0; i < vars.size(); i++) {
+	    		if (vars.get(i).getInit() == null) {
+	    			// a declaration without an initializer (e.g. int a;) has no value to add the helper to
+	    			continue;
+	    		}
 	    		BinaryExpr newInit = new BinaryExpr();
 	    		newInit.setOperator(Operator.plus);
 	    		newInit.setLeft(vars.get(i).getInit());
@@ -117,9 +117,9 @@ public class JavaCodeTransformer {
 	}
 	
 	
-	public String Preprocess(String jarPath, String jarFileName, String fileName, String className,
-			String methodName, String flagName, String flagHelperName) throws ParseException, IOException, InterruptedException {
-		System.out.println("jarPath = " + jarPath + ", jarFileName = " + jarFileName + ", fileName = " + fileName + ", className = " +
+	public ClassOverlay Preprocess(String jarPath, String jarFileName, String fileName, String className,
+			String methodName, String flagName, String flagHelperName) throws ParseException, IOException {
+		FlagSlicer.progress("jarPath = " + jarPath + ", jarFileName = " + jarFileName + ", fileName = " + fileName + ", className = " +
 			className + ", methodName = " + methodName + ", flagName = " + flagName +
 			", flagHelperName = " + flagHelperName);
 		
@@ -134,8 +134,24 @@ public class JavaCodeTransformer {
 		// (after it is translated back to source code), re-run the parsing to re-create a jar (if
 		// we want). These 3 different runs can be combined via a shell script, and not in the actual
 		// code. Perhaps that will solve the problem of different Java code versions.
-		this.flagHelperName = flagHelperName;
-		
+		Map<String, String> methodHelpers = new HashMap<String, String>();
+		methodHelpers.put(methodName, flagHelperName);
+		return Preprocess(jarPath, jarFileName, fileName, className, methodHelpers);
+	}
+	
+	/*
+	 * Preprocesses several methods of the same class at once, so that all of them can be
+	 * sliced over a single changed jar. methodHelpers maps each method name to the name of
+	 * the flag helper that is added to it.
+	 */
+	public ClassOverlay Preprocess(String jarPath, String jarFileName, String fileName, String className,
+			Map<String, String> methodHelpers) throws ParseException, IOException {
+	    return prepareAfterChange(jarPath, jarFileName, fileName, transform(jarPath, fileName, className, methodHelpers));
+	}
+	
+	// parses the source file and adds the flag helpers to its methods, returns the changed source
+	String transform(String jarPath, String fileName, String className, Map<String, String> methodHelpers) 
+			throws ParseException, IOException {
 	    FileInputStream in = new FileInputStream(jarPath + File.separator + fileName +".java");
 	    CompilationUnit cu;
 	    try {
@@ -144,158 +160,198 @@ public class JavaCodeTransformer {
 	    } finally {
 	        in.close();
 	    }
-
-	    // prints the resulting compilation unit to default system output
-	    System.out.println("Before: " + cu.toString());		
-	    
-	    ParsingInfo info = new ParsingInfo(className, methodName, flagHelperName);
-	    new MethodChangerVisitor().visit(cu, info);
-	    
-	    System.out.println("After: " + cu.toString());
+	    return transform(cu, className, methodHelpers);
+	}
+	
+	// adds the flag helpers to the methods of the parsed source, returns the changed source
+	String transform(CompilationUnit cu, String className, Map<String, String> methodHelpers) {
+	    for (Map.Entry<String, String> entry : methodHelpers.entrySet()) {
+	    	ParsingInfo info = new ParsingInfo(className, entry.getKey(), entry.getValue());
+	    	new MethodChangerVisitor().visit(cu, info);
+	    	if (!flagHelperNames.contains(entry.getValue())) {
+	    		flagHelperNames.add(entry.getValue());
+	    	}
+	    }
 	    
-	    return prepareAfterChange(jarPath, jarFileName, fileName, cu.toString());
+	    HelperPrinter printer = new HelperPrinter(flagHelperNames);
+	    cu.accept(printer, null);
+	    String changed = printer.getSource();
+	    helperLines = printer.getHelperLines(changed);
+	    return changed;
 	}
 	
 	/*
-	 * Writes the changed code to a .java file, compiles it, creates the .class file and
-	 * creates a jar file containing the .java and .class files.
+	 * Compiles the changed code in memory, and returns the compiled classes and the changed
+	 * source file as an overlay of the jar file.
 	 */
-	private String prepareAfterChange(String jarPath, String jarName, String fileName, String sourceCode) 
-			throws IOException, InterruptedException {
-		// create the new source file
-		// Note - because we don't change the class name, the new source file will need
-		// to have the same name as the original source file (if the class is public) for it
-		// to compile properly. 
-		// Therefore, user needs to provide a different path in which the new source file will be written
-		// and compiled.
-		// Note - To make the compiler work, need to:
-		// 1. Go to Window->Preferences->Java->Installed JREs and add the relevant jdk (1.7)
-		// as a JRE.
-		// 2. Go to the project - in Build Path->Add Libraries->Add JRE->Alternative, and set
-		// the jdk added as a new project.
-		// 3. Make sure to remove from the project the previous non-jdk jre used in it
-		// 4. Clean the project (Project->Clean)
-		// 5. re-build.
-		String outputPath = jarPath + "\\Testing";
-		File sourceFile = new File(outputPath + "\\" + fileName + ".java");
-		FileWriter writer = new FileWriter(sourceFile);
-		writer.write(sourceCode);
-		writer.close();
-		
-		// create the new .class file
-		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
-		if (compiler == null) {
-			System.out.println("compiler is null");
+	ClassOverlay prepareAfterChange(String jarPath, String jarName, String fileName, String sourceCode) 
+			throws IOException {
+		// the compiled classes refer to the rest of the jar, so compile against it
+		String oldJarPath = jarPath + File.separator + jarName + ".jar";
+		Map<String, byte[]> classes = new InMemoryCompiler().compile(fileName + ".java", sourceCode, oldJarPath);
+		if (classes.isEmpty()) {
+			throw new IOException("no classes were compiled from " + fileName + ".java");
 		}
-	    StandardJavaFileManager fileManager =
-	            compiler.getStandardFileManager(null, null, null);
-	   
-	    fileManager.setLocation(StandardLocation.CLASS_OUTPUT,
-	    		Arrays.asList(new File(jarPath + "\\Testing\\")));
-	    ArrayList<String> comp_options = new ArrayList<String>();
-	    comp_options.add("-g");
-	    compiler.getTask(null, fileManager, null, comp_options, null,
-	                     fileManager.getJavaFileObjectsFromFiles(Arrays.asList(sourceFile)))
-	                    .call();
-	    fileManager.close();
-	    
-	   // createJarFile(outputPath, jarPath, jarName, fileName);
-	    return updateJarFile(jarPath, jarName, fileName, outputPath);
+
+		ClassOverlay overlay = new ClassOverlay(oldJarPath);
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			overlay.addClass(entry.getKey(), entry.getValue());
+		}
+		// the source file is placed in the directory of its classes (the package directory)
+		String mainClass = classes.keySet().iterator().next();
+		int lastDot = mainClass.lastIndexOf('.');
+		String packageDir = lastDot == -1 ? "" : mainClass.substring(0, lastDot).replace('.', '/') + "/";
+		overlay.setSource(packageDir + fileName + ".java", sourceCode);
+		overlay.setHelperLines(helperLines);
+		return overlay;
 	}
 	
+	/*
+	 * The lines of the changed source (by 1-based line number) that hold flag helpers, as they
+	 * were before the helpers were added: without the helper declaration and without the
+	 * helper added to initializers. The lines that held the helper declaration map to null.
+	 * The changed source is the source of the slice, so slices are written from these lines
+	 * instead of being cleaned up after they are written (see SliceWriter).
+	 */
+	public Map<Integer, String> getHelperLines() {
+		return helperLines;
+	}
 	
-	private String updateJarFile(String jarPath, String jarName, String fileName, String outputPath) 
-			throws IOException, InterruptedException {
-		// copy the original jar file
-		String newJarName = jarName + "_temp";
-		String oldJarPath = jarPath + "\\" + jarName + ".jar";
-		String newJarPath = outputPath + "\\" + newJarName + ".jar";
-		String cmd = "";
-		// check if windows or not
-		if (System.getProperty("os.name").toLowerCase().indexOf("win") >= 0) {
-			cmd = "cmd /c xcopy " + oldJarPath + " " + newJarPath + "*"; 
-		} else {
-			oldJarPath.replace("\\", "/");
-			newJarPath.replace("\\", "/");
-			cmd = "cp " + oldJarPath + " " + newJarPath;
+	/*
+	 * Prints the changed source as CompilationUnit.toString does, and records where the helpers
+	 * are printed: the lines of the helper declarations, and the columns of every " + helper"
+	 * that was added to an initializer (from the end of the initializer to the end of the
+	 * helper, 0-based, the end exclusive). The helpers are located while the source is printed,
+	 * so the changed source isn't parsed again, and a line only loses its helper nodes, even
+	 * if the rest of it holds the same text (e.g. in a string literal).
+	 */
+	static class HelperPrinter extends DumpVisitor {
+		Collection<String> helperNames;
+		Set<Integer> declarations = new TreeSet<Integer>();
+		Map<Integer, List<int[]>> additions = new TreeMap<Integer, List<int[]>>();
+		// created by the constructor of DumpVisitor, so it has no initializer
+		private LocatingPrinter printer;
+
+		HelperPrinter(Collection<String> helperNames) {
+			this.helperNames = helperNames;
 		}
-		System.out.println(cmd);
-		Process pr1 = Runtime.getRuntime().exec(cmd);
-		pr1.waitFor();
-		
-		// preparation before updating the jar file - need the .java to be in the same directory
-		// as the .class, so that when we update the jar file they will be overwritten.
-		FileSearch fileSearch = new FileSearch();
-		String classFileName = fileName + ".class";
-		fileSearch.searchDirectory(new File(outputPath), classFileName);
-		int count = fileSearch.getResult().size();
-		if(count != 1){
-			System.err.println("Did not find the file: " + classFileName + " in the path " + outputPath);
+
+		@Override
+		protected SourcePrinter createSourcePrinter() {
+			printer = new LocatingPrinter();
+			return printer;
 		}
-		String pathToClass = fileSearch.getResult().get(0);
-		String relativePathToClass = pathToClass.replace(outputPath + File.separator, "");
-		System.out.println(relativePathToClass);
-		
-		// moving the source file to where the class file is located
-		String sourceFile = outputPath + "\\" + fileName + ".java";
-		cmd = "";
-		// check if windows or not
-		if (System.getProperty("os.name").toLowerCase().indexOf("win") >= 0) {
-			cmd = "cmd /c move " + sourceFile + " " + pathToClass; 
-		} else {
-			sourceFile.replace("\\", "/");
-			pathToClass.replace("\\", "/");
-			cmd = "mv " + sourceFile + " " + pathToClass;
+
+		@Override
+		public void visit(VariableDeclarator n, Object arg) {
+			if (helperNames.contains(n.getId().getName())) {
+				declarations.add(printer.line);
+			}
+			super.visit(n, arg);
 		}
-		System.out.println(cmd);
-		Process pr2 = Runtime.getRuntime().exec(cmd);
-		pr2.waitFor();
-		// update the new jar file with the changed source file and class file
-		// Note - this requires the jar tool provided with the jdk to be in the PATH env variable.
-		String pathWithClass = relativePathToClass + File.separator + fileName + ".class";
-		String pathWithSource = relativePathToClass + File.separator + fileName + ".java";
-		cmd = "";
-		// check if windows or not
-		if (System.getProperty("os.name").toLowerCase().indexOf("win") >= 0) {
-			cmd = "jar uf " + newJarName + ".jar " + pathWithSource + " " + pathWithClass; 
-		} else {
-			outputPath.replace("\\", "/");
-			pathWithClass.replace("\\", "/");
-			cmd = "jar uf " + newJarName + ".jar " + pathWithSource + " " + pathWithClass; 
+
+		@Override
+		public void visit(BinaryExpr n, Object arg) {
+			if (n.getOperator() != Operator.plus || !(n.getRight() instanceof NameExpr) ||
+					!helperNames.contains(((NameExpr) n.getRight()).getName())) {
+				super.visit(n, arg);
+				return;
+			}
+			// the helper additions are created without comments, so only their operands are printed
+			n.getLeft().accept(this, arg);
+			int line = printer.line;
+			int start = printer.column;
+			printer.print(" + ");
+			n.getRight().accept(this, arg);
+			if (printer.line != line) {
+				return;
+			}
+			List<int[]> cuts = additions.get(line);
+			if (cuts == null) {
+				cuts = new ArrayList<int[]>();
+				additions.put(line, cuts);
+			}
+			cuts.add(new int[] { start, printer.column });
+		}
+
+		/*
+		 * The lines of the printed source that hold helpers, as they were before the helpers
+		 * were added (see getHelperLines).
+		 */
+		Map<Integer, String> getHelperLines(String sourceCode) {
+			Map<Integer, String> lines = new HashMap<Integer, String>();
+			SourceLines source = new SourceLines(sourceCode.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+			for (Map.Entry<Integer, List<int[]>> entry : additions.entrySet()) {
+				int lineNum = entry.getKey();
+				if (declarations.contains(lineNum) || lineNum > source.size()) {
+					continue;
+				}
+				StringBuilder clean = new StringBuilder(source.get(lineNum - 1));
+				// the additions of a line are in order, so they are cut from the last one
+				List<int[]> cuts = entry.getValue();
+				for (int i = cuts.size() - 1; i >= 0; --i) {
+					clean.delete(cuts.get(i)[0], Math.min(cuts.get(i)[1], clean.length()));
+				}
+				lines.put(lineNum, clean.toString());
+			}
+			for (Integer lineNum : declarations) {
+				lines.put(lineNum, null);
+			}
+			return lines;
 		}
-		
-		System.out.println(cmd);
-		File workDir = new File(outputPath);
-		Process pr3 = Runtime.getRuntime().exec(cmd, null, workDir);
-		pr3.waitFor();
-		
-		return newJarPath;
-	}
-	
-	public void Postprocess(String filePath) throws IOException {
-		Path path = Paths.get(filePath);
-		Charset charset = StandardCharsets.UTF_8;
-		String content = new String(Files.readAllBytes(path), charset);
-		System.out.println(content);
-		String rep1 = " \\+ "  + this.flagHelperName;
-		String rep2 = "int " + this.flagHelperName + "= 0;";
-		content = content.replaceAll(rep1, "");
-		content = content.replaceAll(rep2, "");
-		System.out.println("After: " + content);
-		Files.write(path, content.getBytes(charset));
 	}
 
-	public static void main(String[] args) {
-		// TODO Auto-generated method stub
-		JavaCodeTransformer jcTrans = new JavaCodeTransformer();
-		try {
-			String res = jcTrans.Preprocess("C:\\Users\\aviv\\Desktop\\wala", "slicerTest", "Test", "Test", "foo", "flag", "flag_helper");
-			System.err.println("res: " + res);
-		} catch (ParseException | IOException | InterruptedException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+	/*
+	 * A source printer that knows the line (1-based) and the column (0-based) it prints at.
+	 * It indents as the printer of DumpVisitor does.
+	 */
+	private static class LocatingPrinter extends DumpVisitor.SourcePrinter {
+		private static final String INDENTATION = "    ";
+		int line = 1;
+		int column;
+		private int level;
+		private boolean indented;
+
+		LocatingPrinter() {
+			super(INDENTATION);
 		}
 
-	}
+		@Override
+		public void indent() {
+			super.indent();
+			++level;
+		}
 
+		@Override
+		public void unindent() {
+			super.unindent();
+			--level;
+		}
+
+		@Override
+		public void print(String arg) {
+			super.print(arg);
+			if (!indented) {
+				column += level * INDENTATION.length();
+				indented = true;
+			}
+			for (int i = 0; i < arg.length(); ++i) {
+				if (arg.charAt(i) == '\n') {
+					++line;
+					column = 0;
+				} else {
+					++column;
+				}
+			}
+		}
+
+		// printLn(String) prints its argument with print, and ends the line with printLn()
+		@Override
+		public void printLn() {
+			super.printLn();
+			++line;
+			column = 0;
+			indented = false;
+		}
+	}
 }
@@ -0,0 +1,57 @@
+package slicer;
+
+import java.util.BitSet;
+
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.ShrikeBTMethod;
+import com.ibm.wala.shrikeCT.InvalidClassFileException;
+
+/*
+ * The source lines of the instructions of a method, by instruction index (the index of the
+ * statements of its IR). The table is read from the bytecode once per method (see
+ * SliceAnalysis.getLineTable), so the lines of a slice are looked up in an array instead of
+ * through the bytecode index of every statement. Methods that have no bytecode (e.g. the fake
+ * root) and instructions without a line map to NO_LINE.
+ */
+public class LineTable {
+	public static final int NO_LINE = -1;
+	static final LineTable EMPTY = new LineTable(new int[0]);
+
+	int[] lines;
+
+	LineTable(int[] lines) {
+		this.lines = lines;
+	}
+
+	public static LineTable make(IMethod method) {
+		if (!(method instanceof ShrikeBTMethod)) {
+			return EMPTY;
+		}
+		ShrikeBTMethod btMethod = (ShrikeBTMethod) method;
+		try {
+			int[] lines = new int[btMethod.getInstructions().length];
+			for (int i = 0; i < lines.length; ++i) {
+				int line = method.getLineNumber(btMethod.getBytecodeIndex(i));
+				lines[i] = line >= 0 ? line : NO_LINE;
+			}
+			return new LineTable(lines);
+		} catch (InvalidClassFileException e) {
+			System.err.println("can't read the line numbers of " + method.getSignature() + ": " + e.getMessage());
+			return EMPTY;
+		}
+	}
+
+	public int getLine(int instructionIndex) {
+		return instructionIndex >= 0 && instructionIndex < lines.length ? lines[instructionIndex] : NO_LINE;
+	}
+
+	// adds the lines of the given instructions
+	public void addLines(BitSet instructions, BitSet lineNumbers) {
+		int[] lines = this.lines;
+		for (int i = instructions.nextSetBit(0); i >= 0 && i < lines.length; i = instructions.nextSetBit(i + 1)) {
+			if (lines[i] != NO_LINE) {
+				lineNumbers.set(lines[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package slicer;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ssa.DefUse;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAAbstractInvokeInstruction;
+import com.ibm.wala.ssa.SSAArrayLoadInstruction;
+import com.ibm.wala.ssa.SSAGetInstruction;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.ssa.SSAPhiInstruction;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+
+/*
+ * Intraprocedural backward slicing over the def-use chains of a single method's IR, without
+ * a call graph or a pointer analysis.
+ * A local slice is only exact as long as it stays within the locals of the method. When a
+ * value in the slice is produced by something that depends on other methods or on the heap
+ * - the result of a call into application code, a read of an application field, or an
+ * array load - the local slice can't be computed, and the caller has to fall back to the
+ * interprocedural slicer. Calls into library (primordial) classes and reads of their
+ * fields are treated as depending on their operands only.
+ */
+public class LocalSlicer {
+	IR ir;
+	DefUse du;
+	IClassHierarchy cha;
+
+	public LocalSlicer(IClassHierarchy cha, IR ir) {
+		this.cha = cha;
+		this.ir = ir;
+		this.du = new DefUse(ir);
+	}
+
+	/*
+	 * Returns the indices of the instructions in the backward slice of the instruction at
+	 * iindex (including it), or null if the slice leaves the method.
+	 */
+	public BitSet computeBackwardSlice(int iindex) {
+		SSAInstruction[] instructions = ir.getInstructions();
+		BitSet slice = new BitSet(instructions.length);
+		BitSet visitedValues = new BitSet();
+		ArrayDeque<SSAInstruction> worklist = new ArrayDeque<SSAInstruction>();
+
+		SSAInstruction seed = instructions[iindex];
+		if (seed == null) {
+			return slice;
+		}
+		if (readsHeap(seed)) {
+			return null;
+		}
+		slice.set(iindex);
+		worklist.add(seed);
+
+		while (!worklist.isEmpty()) {
+			SSAInstruction s = worklist.poll();
+			for (int i = 0; i < s.getNumberOfUses(); ++i) {
+				int use = s.getUse(i);
+				if (use < 0 || visitedValues.get(use)) {
+					continue;
+				}
+				visitedValues.set(use);
+
+				// parameters and constants have no defining instruction
+				SSAInstruction def = du.getDef(use);
+				if (def == null) {
+					continue;
+				}
+				if (def instanceof SSAPhiInstruction) {
+					// phis aren't statements of their own, but the values merged by them are
+					worklist.add(def);
+					continue;
+				}
+				if (readsHeap(def) || callsApplication(def)) {
+					return null;
+				}
+				if (def.iindex >= 0 && !slice.get(def.iindex)) {
+					slice.set(def.iindex);
+					worklist.add(def);
+				}
+			}
+		}
+		return slice;
+	}
+
+	// does the value of the instruction depend on the (application) heap
+	private boolean readsHeap(SSAInstruction s) {
+		if (s instanceof SSAArrayLoadInstruction) {
+			return true;
+		}
+		if (s instanceof SSAGetInstruction) {
+			return isApplicationType(((SSAGetInstruction) s).getDeclaredField().getDeclaringClass());
+		}
+		return false;
+	}
+
+	// is the value of the instruction the result of application code
+	private boolean callsApplication(SSAInstruction s) {
+		if (s instanceof SSAAbstractInvokeInstruction) {
+			return isApplicationType(((SSAAbstractInvokeInstruction) s).getDeclaredTarget().getDeclaringClass());
+		}
+		return false;
+	}
+
+	private boolean isApplicationType(TypeReference type) {
+		IClass klass = cha.lookupClass(type);
+		if (klass == null) {
+			// excluded from the analysis scope, so the full analysis wouldn't see it either
+			return false;
+		}
+		return !klass.getClassLoader().getReference().equals(ClassLoaderReference.Primordial);
+	}
+}
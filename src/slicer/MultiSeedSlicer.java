@@ -0,0 +1,219 @@
+package slicer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.ibm.wala.dataflow.IFDS.PartiallyBalancedTabulationSolver;
+import com.ibm.wala.dataflow.IFDS.PathEdge;
+import com.ibm.wala.dataflow.IFDS.TabulationResult;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.PDG;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.intset.IntIterator;
+
+/*
+ * Computes the backward slice of a whole set of seed statements at once, instead of one
+ * slice per statement.
+ * The seeds are sliced by a single tabulation over the SDG in which every seed is a fact of its
+ * own. The slicing flow functions either kill every fact or pass every fact on unchanged, so the
+ * facts that reach a statement are exactly the seeds whose slice contains it, with the calls
+ * matched to their returns for every seed as they are when it is sliced alone. So the slice of a
+ * single seed is the one Slicer.computeBackwardSlice computes for it alone, and the union of the
+ * slices of any subset of the seeds is available from the same result. A seed that appears more
+ * than once is sliced once.
+ * With a memo, the seeds that were sliced before (by earlier queries over the same analysis)
+ * aren't sliced again: their slices are composed from their closures in the memo. Since every
+ * closure is the slice of its seed alone, a slice composed from the memo is the same as one
+ * computed from scratch.
+ */
+public class MultiSeedSlicer {
+	@SuppressWarnings("rawtypes")
+	SDG sdg;
+	// the closures of seeds sliced before, null to slice every seed
+	SliceMemo memo;
+	// the dependence options of the SDG, which key its closures in the memo
+	String options;
+
+	@SuppressWarnings("rawtypes")
+	public MultiSeedSlicer(SDG sdg) {
+		this(sdg, null, null);
+	}
+
+	@SuppressWarnings("rawtypes")
+	public MultiSeedSlicer(SDG sdg, SliceMemo memo, String options) {
+		this.sdg = sdg;
+		this.memo = memo;
+		this.options = options;
+	}
+
+	public static class SliceResult {
+		List<Statement> seeds;
+		Set<Statement> slice;
+		// seeds (by their index in the seeds list) whose slice contains the statement
+		Map<Statement, BitSet> reachedBy;
+
+		SliceResult(List<Statement> seeds, Set<Statement> slice, Map<Statement, BitSet> reachedBy) {
+			this.seeds = seeds;
+			this.slice = slice;
+			this.reachedBy = reachedBy;
+		}
+
+		public List<Statement> getSeeds() {
+			return seeds;
+		}
+
+		// the union of the slices of all the seeds
+		public Set<Statement> getSlice() {
+			return slice;
+		}
+
+		public BitSet getReachingSeeds(Statement s) {
+			return reachedBy.get(s);
+		}
+
+		// the slice of a single seed
+		Set<Statement> getSlice(int seed) {
+			Set<Statement> result = new LinkedHashSet<Statement>();
+			for (Statement s : slice) {
+				if (reachedBy.get(s).get(seed)) {
+					result.add(s);
+				}
+			}
+			return result;
+		}
+
+		/*
+		 * The instructions of the normal statements of the union of the slices of the given
+		 * seeds, as the indices of the instructions in the IR of every method. The other kinds
+		 * of statements (parameters, returns, heap) have no instruction.
+		 */
+		Map<CGNode, BitSet> getInstructions(BitSet seedSet) {
+			Map<CGNode, BitSet> instructions = new HashMap<CGNode, BitSet>();
+			for (Statement s : slice) {
+				if (s.getKind() != Statement.Kind.NORMAL || !reachedBy.get(s).intersects(seedSet)) {
+					continue;
+				}
+				BitSet indices = instructions.get(s.getNode());
+				if (indices == null) {
+					indices = new BitSet();
+					instructions.put(s.getNode(), indices);
+				}
+				indices.set(((NormalStatement) s).getInstructionIndex());
+			}
+			return instructions;
+		}
+	}
+
+	public SliceResult computeBackwardSlice(List<Statement> seeds) throws IllegalArgumentException, CancelException {
+		Map<Statement, BitSet> reachedBy = slice(seeds);
+		return new SliceResult(seeds, new LinkedHashSet<Statement>(reachedBy.keySet()), reachedBy);
+	}
+
+	private static void addReachingSeeds(Map<Statement, BitSet> reachedBy, Statement s, BitSet seeds) {
+		BitSet seedBits = reachedBy.get(s);
+		if (seedBits == null) {
+			seedBits = new BitSet();
+			reachedBy.put(s, seedBits);
+		}
+		seedBits.or(seeds);
+	}
+
+	/*
+	 * The statements of the union of the slices of the seeds, and the seeds that reach every one
+	 * of them. The memoized seeds are composed from their closures, the others are sliced
+	 * together with a fact for every distinct seed.
+	 */
+	private Map<Statement, BitSet> slice(List<Statement> seeds) throws IllegalArgumentException, CancelException {
+		Map<Statement, BitSet> reachedBy = new LinkedHashMap<Statement, BitSet>();
+		// the distinct seeds of every fact, and the indices of every one of them in the seeds list
+		List<Statement> factSeeds = new ArrayList<Statement>();
+		List<BitSet> factIndices = new ArrayList<BitSet>();
+		Map<Statement, BitSet> memoIndices = new LinkedHashMap<Statement, BitSet>();
+		Map<Statement, Integer> facts = new HashMap<Statement, Integer>();
+		for (int i = 0; i < seeds.size(); ++i) {
+			Statement seed = seeds.get(i);
+			BitSet indices = memoIndices.get(seed);
+			Integer fact = facts.get(seed);
+			if (indices == null && fact == null) {
+				if (memo != null && memo.get(seed, options) != null) {
+					indices = new BitSet();
+					memoIndices.put(seed, indices);
+				} else {
+					fact = factSeeds.size();
+					facts.put(seed, fact);
+					factSeeds.add(seed);
+					factIndices.add(new BitSet());
+				}
+			}
+			(indices != null ? indices : factIndices.get(fact)).set(i);
+		}
+
+		for (Map.Entry<Statement, BitSet> memoized : memoIndices.entrySet()) {
+			for (Statement s : memo.get(memoized.getKey(), options)) {
+				addReachingSeeds(reachedBy, s, memoized.getValue());
+			}
+		}
+		if (factSeeds.isEmpty()) {
+			return reachedBy;
+		}
+
+		TabulationResult<Statement, PDG, Object> result = PartiallyBalancedTabulationSolver
+				.createPartiallyBalancedTabulationSolver(new MultiSeedProblem(sdg, factSeeds), null).solve();
+		List<Set<Statement>> closures = new ArrayList<Set<Statement>>();
+		for (Statement seed : factSeeds) {
+			Set<Statement> closure = new LinkedHashSet<Statement>();
+			closure.add(seed);
+			closures.add(closure);
+		}
+		for (Statement s : result.getSupergraphNodesReached()) {
+			for (IntIterator it = result.getResult(s).intIterator(); it.hasNext();) {
+				closures.get(it.next()).add(s);
+			}
+		}
+		for (int fact = 0; fact < factSeeds.size(); ++fact) {
+			for (Statement s : closures.get(fact)) {
+				addReachingSeeds(reachedBy, s, factIndices.get(fact));
+			}
+			// every closure is the slice of its seed alone, so it doesn't depend on the other seeds
+			if (memo != null) {
+				memo.put(factSeeds.get(fact), options, closures.get(fact));
+			}
+		}
+		return reachedBy;
+	}
+
+	/*
+	 * The backward slice problem of WALA's Slicer, with the fact i at seed i instead of the
+	 * single fact 0 at every seed.
+	 */
+	static class MultiSeedProblem extends Slicer.SliceProblem {
+		List<Statement> seeds;
+
+		@SuppressWarnings("rawtypes")
+		MultiSeedProblem(SDG sdg, List<Statement> seeds) {
+			super(seeds, sdg, true);
+			this.seeds = seeds;
+		}
+
+		@Override
+		public Collection<PathEdge<Statement>> initialSeeds() {
+			Collection<PathEdge<Statement>> result = new ArrayList<PathEdge<Statement>>();
+			for (int fact = 0; fact < seeds.size(); ++fact) {
+				Statement seed = seeds.get(fact);
+				result.add(PathEdge.createPathEdge(getFakeEntry(seed), fact, seed, fact));
+			}
+			return result;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package slicer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+
+/*
+ * Computes the slices of several slicers of the same preprocessed class concurrently, on a
+ * fork-join pool.
+ * All the slicers share one analysis, whose call graph, IRs and SDG are built before the
+ * slicing starts, so the workers only read them. The IRs are pinned while the workers run,
+ * so the IR cache never drops and recreates them concurrently. The SDG builds the PDGs that
+ * the workers reach under its own lock.
+ * The slices are written by the calling thread in the order of the slicers, so the output
+ * doesn't depend on the order in which the workers finish. The analysis is closed once they
+ * are written.
+ */
+public class ParallelSlicer {
+	int parallelism;
+
+	public ParallelSlicer(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	// returns true if all the slices were computed and written
+	public boolean sliceAll(final JavaCodeTransformer codeTrs, final ClassOverlay preprocessed,
+			List<FlagSlicer> slicers) {
+		if (slicers.isEmpty()) {
+			return true;
+		}
+
+		SliceAnalysis analysis;
+		try {
+			FlagSlicer first = slicers.get(0);
+			first.overlay = preprocessed;
+			analysis = first.getAnalysis();
+		} catch (IOException | ClassHierarchyException e) {
+			System.err.println("Error: can't build the analysis of " + preprocessed.getName() + ": " + e.getMessage());
+			return false;
+		}
+		try {
+			return sliceAll(codeTrs, preprocessed, slicers, analysis);
+		} finally {
+			SliceAnalysis.close(analysis);
+		}
+	}
+
+	private boolean sliceAll(JavaCodeTransformer codeTrs, final ClassOverlay preprocessed, List<FlagSlicer> slicers,
+			SliceAnalysis analysis) {
+		try {
+			analysis.prepareForConcurrentUse(FlagSlicer.DATA_OPTIONS, FlagSlicer.CONTROL_OPTIONS);
+		} catch (IllegalArgumentException | CallGraphBuilderCancelException e) {
+			System.err.println("Error: can't build the analysis of " + preprocessed.getName() + ": " + e.getMessage());
+			return false;
+		}
+
+		List<Callable<Map<String, BitSet>>> tasks = new ArrayList<Callable<Map<String, BitSet>>>();
+		for (final FlagSlicer slicer : slicers) {
+			slicer.setAnalysis(analysis);
+			// the heap pools are shared by the workers, so their peaks would mix the slices
+			slicer.metrics.setMeasureHeap(false);
+			tasks.add(new Callable<Map<String, BitSet>>() {
+				@Override
+				public Map<String, BitSet> call() throws Exception {
+					return slicer.computeSlice(preprocessed);
+				}
+			});
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		List<Future<Map<String, BitSet>>> results;
+		try {
+			results = pool.invokeAll(tasks);
+		} finally {
+			pool.shutdown();
+			analysis.endConcurrentUse();
+		}
+
+		boolean success = true;
+		for (int i = 0; i < slicers.size(); ++i) {
+			FlagSlicer slicer = slicers.get(i);
+			try {
+				slicer.writeResult(codeTrs, results.get(i).get());
+			} catch (ExecutionException e) {
+				System.err.println("Error: can't slice " + slicer.methodName + " (" + slicer.flagName + "): " +
+						e.getCause().getMessage());
+				success = false;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (IOException e) {
+				System.err.println("Error: can't write the slice to " + slicer.outputSlicePath + ": " + e.getMessage());
+				success = false;
+			}
+		}
+		return success;
+	}
+}
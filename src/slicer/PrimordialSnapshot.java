@@ -0,0 +1,138 @@
+package slicer;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.classLoader.ModuleEntry;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.config.FileOfClasses;
+
+/*
+ * A snapshot of the primordial (JDK) classes of the analysis scope: a single jar holding
+ * only the classes that the exclusions file doesn't exclude, stored uncompressed.
+ * Every run otherwise opens the JDK jars, and lists and matches all of their entries
+ * against the exclusions before reading the few it keeps. With a snapshot, the primordial
+ * loader reads a jar that holds just those classes, and doesn't inflate them.
+ * WALA's class hierarchy itself can't be serialized, so it is still built on every run - the
+ * snapshot saves the reading of the JDK, not the resolution of its classes.
+ * The snapshot records the JDK and the exclusions file it was built from, and a snapshot
+ * that doesn't match them is ignored.
+ */
+public class PrimordialSnapshot {
+	private static final String FORMAT_VERSION = "1";
+	private static final Attributes.Name FORMAT = new Attributes.Name("Snapshot-Format");
+	private static final Attributes.Name JDK = new Attributes.Name("Snapshot-JDK");
+	private static final Attributes.Name EXCLUSIONS = new Attributes.Name("Snapshot-Exclusions");
+
+	// identifies the JDK that the analysis runs on
+	private static String getJdk() {
+		return System.getProperty("java.version") + " " + System.getProperty("java.home");
+	}
+
+	public static void build(File snapshot, File exclusionsFile) throws IOException {
+		AnalysisScope scope = AnalysisScopeReader.makePrimordialScope(exclusionsFile);
+
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.put(FORMAT, FORMAT_VERSION);
+		attributes.put(JDK, getJdk());
+		attributes.put(EXCLUSIONS, SliceCache.hashFile(exclusionsFile));
+
+		int classes = 0;
+		Set<String> written = new HashSet<String>();
+		File tmp = new File(snapshot.getPath() + ".tmp");
+		try (JarOutputStream out = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)), manifest)) {
+			// the modules are in the order the loader searches them, so the first class of a name wins
+			for (Module module : scope.getModules(ClassLoaderReference.Primordial)) {
+				for (Iterator<? extends ModuleEntry> it = module.getEntries(); it.hasNext();) {
+					ModuleEntry entry = it.next();
+					if (!entry.isClassFile() || scope.getExclusions().contains(entry.getClassName()) ||
+							!written.add(entry.getName())) {
+						continue;
+					}
+					writeStored(out, entry.getName(), readAll(entry.getInputStream()));
+					++classes;
+				}
+			}
+		}
+		if (snapshot.exists() && !snapshot.delete() || !tmp.renameTo(snapshot)) {
+			tmp.delete();
+			throw new IOException("can't write snapshot: " + snapshot);
+		}
+		FlagSlicer.progress("wrote " + classes + " primordial classes to " + snapshot);
+	}
+
+	private static byte[] readAll(InputStream stream) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		try (InputStream in = stream) {
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeStored(JarOutputStream out, String name, byte[] bytes) throws IOException {
+		JarEntry entry = new JarEntry(name);
+		CRC32 crc = new CRC32();
+		crc.update(bytes);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(bytes.length);
+		entry.setCompressedSize(bytes.length);
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		out.write(bytes);
+		out.closeEntry();
+	}
+
+	// was the snapshot built for the running JDK and the given exclusions
+	public static boolean isValid(File snapshot, File exclusionsFile) throws IOException {
+		if (!snapshot.isFile()) {
+			return false;
+		}
+		try (JarFile jar = new JarFile(snapshot)) {
+			Manifest manifest = jar.getManifest();
+			if (manifest == null) {
+				return false;
+			}
+			Attributes attributes = manifest.getMainAttributes();
+			return FORMAT_VERSION.equals(attributes.getValue(FORMAT)) && getJdk().equals(attributes.getValue(JDK)) &&
+					SliceCache.hashFile(exclusionsFile).equals(attributes.getValue(EXCLUSIONS));
+		}
+	}
+
+	/*
+	 * An empty scope whose primordial loader reads the snapshot. The snapshot stays open while
+	 * the scope is used, and is closed with it (see SliceAnalysis.close).
+	 */
+	public static AnalysisScope makeScope(File snapshot, File exclusionsFile) throws IOException {
+		AnalysisScope scope = AnalysisScope.createJavaAnalysisScope();
+		try (InputStream in = new FileInputStream(exclusionsFile)) {
+			scope.setExclusions(new FileOfClasses(in));
+		}
+		scope.addToScope(ClassLoaderReference.Primordial, new JarFileModule(new JarFile(snapshot, false)));
+		return scope;
+	}
+}
@@ -0,0 +1,230 @@
+package slicer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.slicer.PDG;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.util.graph.NumberedEdgeManager;
+import com.ibm.wala.util.graph.NumberedNodeManager;
+import com.ibm.wala.util.intset.IntSet;
+
+/*
+ * An SDG that several threads can slice at once.
+ * The SDG builds the PDG of a method when a slice first reaches it, numbers its statements,
+ * and adds the heap dependences of a statement when they are first asked for, none of which
+ * is safe to do from several threads. So the PDGs are built, and the nodes and edges of the
+ * graph are read, under the lock of the SDG: only the PDGs that the slices reach are built,
+ * once. A PDG is populated before it is returned, so its statements can then be read without
+ * the lock. The iterators are copied under the lock, since the edges they iterate over may
+ * grow while another thread reads them.
+ */
+@SuppressWarnings({ "rawtypes", "unchecked" })
+public class SharedSDG extends SDG {
+	private final NumberedNodeManager<Statement> nodes;
+	private final NumberedEdgeManager<Statement> edges;
+
+	public SharedSDG(CallGraph cg, PointerAnalysis<InstanceKey> pa, DataDependenceOptions dOptions,
+			ControlDependenceOptions cOptions) {
+		super(cg, pa, dOptions, cOptions);
+		nodes = new LockedNodes(super.getNodeManager());
+		edges = new LockedEdges(super.getEdgeManager());
+	}
+
+	@Override
+	public synchronized PDG getPDG(CGNode node) {
+		PDG pdg = super.getPDG(node);
+		// a PDG computes its statements and dependences on first access
+		pdg.getNumberOfNodes();
+		return pdg;
+	}
+
+	@Override
+	public NumberedNodeManager<Statement> getNodeManager() {
+		return nodes;
+	}
+
+	@Override
+	protected NumberedEdgeManager<Statement> getEdgeManager() {
+		return edges;
+	}
+
+	private static List<Statement> copy(Iterator<? extends Statement> it) {
+		List<Statement> list = new ArrayList<Statement>();
+		while (it.hasNext()) {
+			list.add(it.next());
+		}
+		return list;
+	}
+
+	private class LockedNodes implements NumberedNodeManager<Statement> {
+		private final NumberedNodeManager<Statement> delegate;
+
+		LockedNodes(NumberedNodeManager<Statement> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Iterator<Statement> iterator() {
+			synchronized (SharedSDG.this) {
+				return copy(delegate.iterator()).iterator();
+			}
+		}
+
+		@Override
+		public int getNumberOfNodes() {
+			synchronized (SharedSDG.this) {
+				return delegate.getNumberOfNodes();
+			}
+		}
+
+		@Override
+		public void addNode(Statement n) {
+			synchronized (SharedSDG.this) {
+				delegate.addNode(n);
+			}
+		}
+
+		@Override
+		public void removeNode(Statement n) {
+			synchronized (SharedSDG.this) {
+				delegate.removeNode(n);
+			}
+		}
+
+		@Override
+		public boolean containsNode(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.containsNode(n);
+			}
+		}
+
+		@Override
+		public int getNumber(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.getNumber(n);
+			}
+		}
+
+		@Override
+		public Statement getNode(int number) {
+			synchronized (SharedSDG.this) {
+				return delegate.getNode(number);
+			}
+		}
+
+		@Override
+		public int getMaxNumber() {
+			synchronized (SharedSDG.this) {
+				return delegate.getMaxNumber();
+			}
+		}
+
+		@Override
+		public Iterator<Statement> iterateNodes(IntSet s) {
+			synchronized (SharedSDG.this) {
+				return copy(delegate.iterateNodes(s)).iterator();
+			}
+		}
+	}
+
+	private class LockedEdges implements NumberedEdgeManager<Statement> {
+		private final NumberedEdgeManager<Statement> delegate;
+
+		LockedEdges(NumberedEdgeManager<Statement> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public Iterator<Statement> getPredNodes(Statement n) {
+			synchronized (SharedSDG.this) {
+				return copy(delegate.getPredNodes(n)).iterator();
+			}
+		}
+
+		@Override
+		public int getPredNodeCount(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.getPredNodeCount(n);
+			}
+		}
+
+		@Override
+		public Iterator<Statement> getSuccNodes(Statement n) {
+			synchronized (SharedSDG.this) {
+				return copy(delegate.getSuccNodes(n)).iterator();
+			}
+		}
+
+		@Override
+		public int getSuccNodeCount(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.getSuccNodeCount(n);
+			}
+		}
+
+		@Override
+		public void addEdge(Statement src, Statement dst) {
+			synchronized (SharedSDG.this) {
+				delegate.addEdge(src, dst);
+			}
+		}
+
+		@Override
+		public void removeEdge(Statement src, Statement dst) {
+			synchronized (SharedSDG.this) {
+				delegate.removeEdge(src, dst);
+			}
+		}
+
+		@Override
+		public void removeAllIncidentEdges(Statement n) {
+			synchronized (SharedSDG.this) {
+				delegate.removeAllIncidentEdges(n);
+			}
+		}
+
+		@Override
+		public void removeIncomingEdges(Statement n) {
+			synchronized (SharedSDG.this) {
+				delegate.removeIncomingEdges(n);
+			}
+		}
+
+		@Override
+		public void removeOutgoingEdges(Statement n) {
+			synchronized (SharedSDG.this) {
+				delegate.removeOutgoingEdges(n);
+			}
+		}
+
+		@Override
+		public boolean hasEdge(Statement src, Statement dst) {
+			synchronized (SharedSDG.this) {
+				return delegate.hasEdge(src, dst);
+			}
+		}
+
+		@Override
+		public IntSet getSuccNodeNumbers(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.getSuccNodeNumbers(n);
+			}
+		}
+
+		@Override
+		public IntSet getPredNodeNumbers(Statement n) {
+			synchronized (SharedSDG.this) {
+				return delegate.getPredNodeNumbers(n);
+			}
+		}
+	}
+}
@@ -0,0 +1,477 @@
+package slicer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ibm.wala.classLoader.IClass;
+import com.ibm.wala.classLoader.IMethod;
+import com.ibm.wala.classLoader.JarFileModule;
+import com.ibm.wala.classLoader.Module;
+import com.ibm.wala.ipa.callgraph.AnalysisCache;
+import com.ibm.wala.ipa.callgraph.AnalysisOptions;
+import com.ibm.wala.ipa.callgraph.AnalysisScope;
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.callgraph.CallGraph;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilder;
+import com.ibm.wala.ipa.callgraph.CallGraphBuilderCancelException;
+import com.ibm.wala.ipa.callgraph.Entrypoint;
+import com.ibm.wala.ipa.callgraph.cha.CHACallGraph;
+import com.ibm.wala.ipa.callgraph.impl.Everywhere;
+import com.ibm.wala.ipa.callgraph.impl.Util;
+import com.ibm.wala.ipa.callgraph.propagation.InstanceKey;
+import com.ibm.wala.ipa.callgraph.propagation.PointerAnalysis;
+import com.ibm.wala.ipa.cha.ClassHierarchy;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.ipa.cha.IClassHierarchy;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer.ControlDependenceOptions;
+import com.ibm.wala.ipa.slicer.Slicer.DataDependenceOptions;
+import com.ibm.wala.ssa.IR;
+import com.ibm.wala.ssa.SSAOptions;
+import com.ibm.wala.types.ClassLoaderReference;
+import com.ibm.wala.types.TypeReference;
+import com.ibm.wala.util.CancelException;
+import com.ibm.wala.util.config.AnalysisScopeReader;
+import com.ibm.wala.util.strings.Atom;
+
+/*
+ * The whole program analysis that slices are computed over: the analysis scope, the class
+ * hierarchy, the call graph and the pointer analysis of a class path, with the main method
+ * of one class as the entrypoint.
+ * Building it is the expensive part of slicing, so it is built once and shared by all the
+ * slices of the same jar and entrypoint. The call graph (and the pointer analysis) is only
+ * built when it is first asked for, so slices that can be computed from the IR of a single
+ * method never pay for it.
+ * The scope keeps the jars it reads open, since WALA reads a class file again whenever it
+ * dropped the class's reader, so an analysis must be closed once no slice uses it.
+ */
+public class SliceAnalysis implements AutoCloseable {
+	String classPath;
+	String entrypointClass;
+	AnalysisScope scope;
+	IClassHierarchy cha;
+	AnalysisOptions options;
+	AnalysisCache cache;
+	CallGraph cg;
+	// null if the call graph was built without a pointer analysis (CHA)
+	PointerAnalysis<InstanceKey> pointerAnalysis;
+	// the most precise call graph to try, and the budget of every tier
+	CallGraphTier maxTier = CallGraphTier.DEFAULT;
+	long timeBudgetMillis;
+	long heapBudgetBytes;
+	// the heap to stay within (0 for unbounded), see releaseIfOverBudget
+	long memoryBudgetBytes;
+	// the tier that actually built the call graph
+	CallGraphTier tier;
+	// the application classes that slices over the call graph depend on, see getDependentClasses
+	Set<String> dependentClasses;
+	// the closures of the seeds sliced over this analysis
+	SliceMemo memo = new SliceMemo(SliceMemo.DEFAULT_MAX_WEIGHT);
+	// the line tables of the methods that slices reached, shared by all the threads
+	ConcurrentMap<IMethod, LineTable> lineTables = new ConcurrentHashMap<IMethod, LineTable>();
+	// the IRs of the methods in the default context that slices asked for, shared by all the threads
+	ConcurrentMap<IMethod, IR> irs = new ConcurrentHashMap<IMethod, IR>();
+	// when every IR was last asked for, by the ticks of irClock, see releaseIfOverBudget
+	ConcurrentMap<IMethod, Long> irUses = new ConcurrentHashMap<IMethod, Long>();
+	AtomicLong irClock = new AtomicLong();
+	/*
+	 * While the analysis is used concurrently, strong references to the IRs and def-use
+	 * information of the call graph (null otherwise). The IR cache holds them softly, and an
+	 * IR it dropped would be created again by several threads at once.
+	 */
+	List<Object> pinned;
+	// SDGs by their dependence options, built on first use, least recently used first (guarded by this analysis)
+	@SuppressWarnings("rawtypes")
+	Map<String, SDG> sdgs = new LinkedHashMap<String, SDG>(4, 0.75f, true);
+	// the number of collections when memory was last released, see releaseIfOverBudget
+	long releasedAtCollection = -1;
+
+	// the part of the memory budget above which releaseIfOverBudget releases memory
+	private static final int RELEASE_PERCENT = 75;
+	// a rough size of a statement of the memo, with its share of the PDG that holds it
+	private static final long MEMO_BYTES_PER_STATEMENT = 128;
+
+	public SliceAnalysis(String classPath, File exclusionsFile, String entrypointClass)
+			throws IOException, ClassHierarchyException {
+		this(classPath, null, exclusionsFile, entrypointClass);
+	}
+
+	/*
+	 * The classes of the overlay (if not null) take precedence over the classes of the same
+	 * name in the class path, since the modules of a loader are searched in order.
+	 */
+	public SliceAnalysis(String classPath, ClassOverlay overlay, File exclusionsFile, String entrypointClass)
+			throws IOException, ClassHierarchyException {
+		this(classPath, overlay, exclusionsFile, null, entrypointClass);
+	}
+
+	/*
+	 * The primordial classes are read from the snapshot, if it is not null and it matches
+	 * the running JDK and the exclusions file.
+	 */
+	public SliceAnalysis(String classPath, ClassOverlay overlay, File exclusionsFile, File primordialSnapshot,
+			String entrypointClass) throws IOException, ClassHierarchyException {
+		this.classPath = classPath;
+		this.entrypointClass = entrypointClass;
+		scope = makeScope(classPath, overlay, exclusionsFile, primordialSnapshot);
+		try {
+			cha = ClassHierarchy.make(scope);
+		} catch (ClassHierarchyException | RuntimeException e) {
+			close();
+			throw e;
+		}
+		cache = new AnalysisCache();
+	}
+
+	// the scope of the class path, with the overlay (if not null) ahead of it
+	static AnalysisScope makeScope(String classPath, ClassOverlay overlay, File exclusionsFile, File primordialSnapshot)
+			throws IOException {
+		AnalysisScope scope;
+		if (primordialSnapshot != null && PrimordialSnapshot.isValid(primordialSnapshot, exclusionsFile)) {
+			scope = PrimordialSnapshot.makeScope(primordialSnapshot, exclusionsFile);
+		} else {
+			if (primordialSnapshot != null) {
+				System.err.println("primordial snapshot " + primordialSnapshot + " doesn't match the JDK or the exclusions, ignoring it");
+			}
+			scope = AnalysisScopeReader.makePrimordialScope(exclusionsFile);
+		}
+		if (overlay != null) {
+			scope.addToScope(ClassLoaderReference.Application, overlay.toModule());
+		}
+		AnalysisScopeReader.addClassPathToScope(classPath, scope, ClassLoaderReference.Application);
+		return scope;
+	}
+
+	public IClassHierarchy getClassHierarchy() {
+		return cha;
+	}
+
+	/*
+	 * The call graph is built with the most precise tier first. A tier that runs out of its
+	 * time or heap budget (0 for unbounded) is cancelled, and the next cheaper one is tried.
+	 * CHA, the last resort, is not bounded.
+	 */
+	public void setPrecision(CallGraphTier maxTier, long timeBudgetMillis, long heapBudgetBytes) {
+		this.maxTier = maxTier;
+		this.timeBudgetMillis = timeBudgetMillis;
+		this.heapBudgetBytes = heapBudgetBytes;
+	}
+
+	/*
+	 * Bounds the analysis by the given heap (0 for unbounded), trading speed for completion:
+	 * the call graph tiers that have no heap budget of their own are bounded by it, the memo
+	 * is bounded by a part of it, and memory is released whenever releaseIfOverBudget finds
+	 * the heap close to it.
+	 */
+	public void setMemoryBudget(long budgetBytes) {
+		memoryBudgetBytes = budgetBytes;
+		if (budgetBytes > 0) {
+			memo.setMaxWeight(Math.min(memo.maxWeight, budgetBytes / 8 / MEMO_BYTES_PER_STATEMENT));
+		}
+	}
+
+	/*
+	 * If the analysis has a memory budget and the live heap is close to it, evicts the least
+	 * recently used of what slices keep: the older half of the IRs, and the least recently
+	 * used SDG (with its PDGs) - the only SDG only once there are no IRs left to evict. A later
+	 * slice regenerates what it needs on demand, only for the methods it reaches. The IR cache
+	 * of the call graph holds its IRs softly, so the JVM drops them by itself. Returns true if
+	 * memory was released.
+	 * The live heap is only measured again by the next collection, so nothing more is evicted
+	 * until one ran. Another thread may be reading the evicted IRs and SDGs, so a memory bounded
+	 * analysis must only be used by one thread at a time (BatchSlicer and SliceServer slice one
+	 * query at a time when there is a memory budget). Nothing is released while the analysis is
+	 * prepared for concurrent use.
+	 */
+	public synchronized boolean releaseIfOverBudget() {
+		if (memoryBudgetBytes <= 0 || pinned != null) {
+			return false;
+		}
+		long collections = BudgetMonitor.getCollectionCount();
+		if (collections == releasedAtCollection 
+				|| BudgetMonitor.getLiveHeapBytes() < memoryBudgetBytes / 100 * RELEASE_PERCENT) {
+			return false;
+		}
+		int evictedIRs = evictIRs((irs.size() + 1) / 2);
+		if (sdgs.size() > 1 || (evictedIRs == 0 && !sdgs.isEmpty())) {
+			Iterator<String> eldest = sdgs.keySet().iterator();
+			eldest.next();
+			eldest.remove();
+		} else if (evictedIRs == 0) {
+			return false;
+		}
+		releasedAtCollection = collections;
+		return true;
+	}
+
+	// evicts the count least recently used IRs, returns the number evicted
+	private int evictIRs(int count) {
+		List<Map.Entry<IMethod, Long>> uses = new ArrayList<Map.Entry<IMethod, Long>>(irUses.entrySet());
+		Collections.sort(uses, new Comparator<Map.Entry<IMethod, Long>>() {
+			@Override
+			public int compare(Map.Entry<IMethod, Long> a, Map.Entry<IMethod, Long> b) {
+				return a.getValue().compareTo(b.getValue());
+			}
+		});
+		int evicted = 0;
+		for (Map.Entry<IMethod, Long> use : uses.subList(0, Math.min(count, uses.size()))) {
+			irUses.remove(use.getKey());
+			if (irs.remove(use.getKey()) != null) {
+				++evicted;
+			}
+		}
+		return evicted;
+	}
+
+	// builds the call graph on first use
+	public synchronized CallGraph getCallGraph() throws IllegalArgumentException, CallGraphBuilderCancelException {
+		if (cg != null) {
+			return cg;
+		}
+		Iterable<Entrypoint> entrypoints = Util.makeMainEntrypoints(scope, cha, entrypointClass);
+		options = new AnalysisOptions(scope, entrypoints);
+		for (CallGraphTier t = maxTier; t != null; t = t.cheaper()) {
+			try {
+				buildCallGraph(t, entrypoints);
+				tier = t;
+				break;
+			} catch (CallGraphBuilderCancelException e) {
+				System.err.println("call graph tier " + t + " was cancelled: " + e.getMessage());
+				pointerAnalysis = null;
+			}
+		}
+		FlagSlicer.progress("call graph built by tier " + tier);
+		return cg;
+	}
+
+	private void buildCallGraph(CallGraphTier t, Iterable<Entrypoint> entrypoints) 
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		CallGraphBuilder builder = t.makeBuilder(options, cache, cha, scope);
+		if (builder == null) {
+			CHACallGraph chaCG = new CHACallGraph(cha);
+			try {
+				chaCG.init(entrypoints);
+			} catch (CancelException e) {
+				throw new IllegalStateException("unbounded CHA call graph was cancelled", e);
+			}
+			cg = chaCG;
+		} else {
+			// without a heap budget of its own, a tier is bounded by the memory budget
+			cg = builder.makeCallGraph(options, new BudgetMonitor(timeBudgetMillis, 
+					heapBudgetBytes > 0 ? heapBudgetBytes : memoryBudgetBytes));
+			// the pointer analysis refers to the builder, so the builder (and its propagation
+			// system) stays reachable as long as the pointer analysis is used for heap dependences
+			pointerAnalysis = builder.getPointerAnalysis();
+		}
+	}
+
+	/*
+	 * The application classes (e.g. example/Test) that a slice over the call graph depends on:
+	 * the classes of the methods of the call graph, with all of their supertypes and subtypes.
+	 * A change to a supertype, or to an override in a subtype, can change how the calls of the
+	 * call graph dispatch even if the changed class has no method in the call graph.
+	 */
+	public synchronized Set<String> getDependentClasses() throws IllegalArgumentException, CallGraphBuilderCancelException {
+		if (dependentClasses == null) {
+			Set<IClass> classes = new HashSet<IClass>();
+			for (CGNode node : getCallGraph()) {
+				classes.add(node.getMethod().getDeclaringClass());
+			}
+			Set<IClass> related = new HashSet<IClass>();
+			for (IClass klass : classes) {
+				if (!isApplicationClass(klass)) {
+					continue;
+				}
+				for (IClass superclass = klass.getSuperclass(); superclass != null; superclass = superclass.getSuperclass()) {
+					related.add(superclass);
+				}
+				related.addAll(klass.getAllImplementedInterfaces());
+				if (klass.isInterface()) {
+					related.addAll(cha.getImplementors(klass.getReference()));
+				} else {
+					related.addAll(cha.computeSubClasses(klass.getReference()));
+				}
+			}
+			classes.addAll(related);
+			dependentClasses = new HashSet<String>();
+			for (IClass klass : classes) {
+				if (isApplicationClass(klass)) {
+					// the name without the leading L
+					dependentClasses.add(klass.getName().toString().substring(1));
+				}
+			}
+		}
+		return dependentClasses;
+	}
+
+	private static boolean isApplicationClass(IClass klass) {
+		return klass.getClassLoader().getReference().equals(ClassLoaderReference.Application);
+	}
+
+	// the tier that built the call graph, or null if it wasn't built
+	public CallGraphTier getTier() {
+		return tier;
+	}
+
+	// null if the call graph was built without a pointer analysis (CHA)
+	public PointerAnalysis<InstanceKey> getPointerAnalysis() throws IllegalArgumentException, CallGraphBuilderCancelException {
+		getCallGraph();
+		return pointerAnalysis;
+	}
+
+	// the first method with the given name, declared in the given class (e.g. Lexample/Test)
+	public IMethod findMethod(String className, String methodName) {
+		IClass klass = cha.lookupClass(TypeReference.findOrCreate(ClassLoaderReference.Application, className));
+		if (klass == null) {
+			return null;
+		}
+		Atom name = Atom.findOrCreateUnicodeAtom(methodName);
+		for (IMethod m : klass.getDeclaredMethods()) {
+			if (m.getName().equals(name)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	/*
+	 * The IR of the method in the default context (null for abstract and native methods),
+	 * shared with the call graph builder through the IR cache, which is synchronized. The first
+	 * IR of a method is kept, so every thread slices the same IR even if the cache drops it.
+	 */
+	public IR getIR(IMethod method) {
+		IR ir = irs.get(method);
+		if (ir == null) {
+			IR created = cache.getSSACache().findOrCreateIR(method, Everywhere.EVERYWHERE, SSAOptions.defaultOptions());
+			if (created == null) {
+				return null;
+			}
+			ir = irs.putIfAbsent(method, created);
+			if (ir == null) {
+				ir = created;
+			}
+		}
+		irUses.put(method, irClock.incrementAndGet());
+		return ir;
+	}
+
+	// the line table of the method, read from its bytecode on first use
+	public LineTable getLineTable(IMethod method) {
+		LineTable table = lineTables.get(method);
+		if (table == null) {
+			LineTable created = LineTable.make(method);
+			table = lineTables.putIfAbsent(method, created);
+			if (table == null) {
+				table = created;
+			}
+		}
+		return table;
+	}
+
+	/*
+	 * Builds the call graph, the IR and def-use information of all of its nodes, and the SDG
+	 * with the given options, so that slices can be computed by several threads at once. From
+	 * then on, until endConcurrentUse, the call graph, the pointer analysis and the IR cache are
+	 * only read, and the IRs are pinned. The SDG builds the PDGs the slices reach under its own
+	 * lock (see SharedSDG).
+	 */
+	public synchronized void prepareForConcurrentUse(DataDependenceOptions dOptions, ControlDependenceOptions cOptions)
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		CallGraph cg = getCallGraph();
+		pinned = new ArrayList<Object>();
+		for (CGNode node : cg) {
+			pinned.add(node.getIR());
+			pinned.add(node.getDU());
+		}
+		getSDG(dOptions, cOptions);
+	}
+
+	// unpins the IRs once the concurrent slices are done, so the IR cache may drop them again
+	public synchronized void endConcurrentUse() {
+		pinned = null;
+	}
+
+	// closes the jars of the scope, the analysis can't be used afterwards
+	@Override
+	public void close() throws IOException {
+		closeScope(scope);
+	}
+
+	// closes the jars that a scope of makeScope reads
+	static void closeScope(AnalysisScope scope) throws IOException {
+		for (ClassLoaderReference loader : scope.getLoaders()) {
+			for (Module module : scope.getModules(loader)) {
+				if (module instanceof JarFileModule) {
+					((JarFileModule) module).getJarFile().close();
+				}
+			}
+		}
+	}
+
+	// closes the analysis if there is one, a jar that can't be closed is only reported
+	static void close(SliceAnalysis analysis) {
+		if (analysis == null) {
+			return;
+		}
+		try {
+			analysis.close();
+		} catch (IOException e) {
+			System.err.println("can't close the jars of the analysis: " + e.getMessage());
+		}
+	}
+
+	/*
+	 * Returns the SDG of the call graph with the given dependence options. It is built once
+	 * per analysis and shared by all the slices computed over it. The SDG builds the PDG of a
+	 * node only when a slice first reaches it and keeps it, so only the methods that slices
+	 * actually touch are materialized. The PDGs are built under the lock of the SDG, so several
+	 * threads can slice it at once.
+	 * Without a pointer analysis, heap dependences are ignored.
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public synchronized SDG getSDG(DataDependenceOptions dOptions, ControlDependenceOptions cOptions) 
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		PointerAnalysis<InstanceKey> pa = getPointerAnalysis();
+		if (pa == null && !dOptions.isIgnoreHeap()) {
+			dOptions = DataDependenceOptions.NO_HEAP;
+		}
+		String key = getOptionsKey(dOptions, cOptions);
+		SDG sdg = sdgs.get(key);
+		if (sdg == null) {
+			sdg = new SharedSDG(getCallGraph(), pa, dOptions, cOptions);
+			sdgs.put(key, sdg);
+		}
+		return sdg;
+	}
+
+	// names the options of the SDG that getSDG returns for the given options
+	private String getOptionsKey(DataDependenceOptions dOptions, ControlDependenceOptions cOptions) 
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		if (getPointerAnalysis() == null && !dOptions.isIgnoreHeap()) {
+			dOptions = DataDependenceOptions.NO_HEAP;
+		}
+		return dOptions.name() + "," + cOptions.name();
+	}
+
+	// a slicer over the SDG with the given options, which shares the memo of this analysis
+	public MultiSeedSlicer getSlicer(DataDependenceOptions dOptions, ControlDependenceOptions cOptions) 
+			throws IllegalArgumentException, CallGraphBuilderCancelException {
+		return new MultiSeedSlicer(getSDG(dOptions, cOptions), memo, getOptionsKey(dOptions, cOptions));
+	}
+
+	public SliceMemo getMemo() {
+		return memo;
+	}
+}
@@ -0,0 +1,317 @@
+package slicer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * On-disk cache of slicing results.
+ * An entry is keyed by the content of what is preprocessed (the source file, or the class
+ * for bytecode), the exclusions file, the entrypoint class, the sliced method and flag and
+ * the slicing mode - all known before preprocessing, so a hit skips the preprocessing, the
+ * hierarchy, the call graph and the slicing altogether. WALA's class hierarchy, call graph
+ * and pointer analysis are not serializable, and none of them is cached: the cache stores only
+ * what is derived from them, the sliced line numbers and the text they are written with. A
+ * query that misses pays for the whole analysis. Slicing all the flags of a method stores the
+ * slice of every flag, so the later queries of any of its flags hit.
+ * Every entry records the hashes of the classes of the jar its slice depends on (see
+ * ClassHashes): the classes of the call graph with their supertypes and subtypes (see
+ * SliceAnalysis.getDependentClasses), and the list of all the classes. It is only used as
+ * long as none of them changed - a change to a class that the slice doesn't depend on keeps
+ * it valid. The hashes of a jar are loaded once and
+ * reused until the jar changes. Entries of an older format are evicted. When the total size
+ * of the cache exceeds the cap, the least recently used entries are removed.
+ */
+public class SliceCache {
+	private static final String FORMAT_VERSION = "4";
+	private static final String ENTRY_SUFFIX = ".slice";
+	private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+	public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+	private File cacheDir;
+	private long maxBytes;
+	// the class hashes of the jars looked up so far, by their absolute path
+	private Map<String, ClassHashes> jarHashes = new HashMap<String, ClassHashes>();
+
+	public SliceCache(File cacheDir, long maxBytes) throws IOException {
+		if (!cacheDir.isDirectory() && !cacheDir.mkdirs()) {
+			throw new IOException("can't create cache directory: " + cacheDir);
+		}
+		this.cacheDir = cacheDir;
+		this.maxBytes = maxBytes;
+		evictOldFormats();
+	}
+
+	public File getCacheDir() {
+		return cacheDir;
+	}
+
+	// the class hashes of the jar, loaded on first use and reused as long as the jar is the same
+	public synchronized ClassHashes getClassHashes(File jar) throws IOException {
+		String path = jar.getAbsolutePath();
+		ClassHashes hashes = jarHashes.get(path);
+		if (hashes == null || !hashes.isCurrent(jar)) {
+			hashes = ClassHashes.load(jar, cacheDir);
+			jarHashes.put(path, hashes);
+		}
+		return hashes;
+	}
+
+	// hex encoded SHA-256 of the file content
+	public static String hashFile(File file) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buf = new byte[64 * 1024];
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				digest.update(buf, 0, n);
+			}
+		}
+		return toHex(digest.digest());
+	}
+
+	public static String hashStrings(String... parts) {
+		MessageDigest digest = newDigest();
+		for (String part : parts) {
+			digest.update(part.getBytes(CHARSET));
+			// separator, so that ("ab", "c") and ("a", "bc") differ
+			digest.update((byte) 0);
+		}
+		return toHex(digest.digest());
+	}
+
+	static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not supported", e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	// input describes the content that is preprocessed, e.g. the hash of the source file
+	public String makeKey(String input, String exclusionsHash, String entrypoint,
+			String method, String flag, String mode) {
+		return hashStrings(FORMAT_VERSION, input, exclusionsHash, entrypoint, method, flag, mode);
+	}
+
+	private File entryFile(String key) {
+		return new File(cacheDir, key + ENTRY_SUFFIX);
+	}
+
+	// returns the cached slice, or null if there's no entry for the key that is valid for the classes
+	public synchronized CachedSlice lookup(String key, ClassHashes classes) {
+		File entry = entryFile(key);
+		if (!entry.isFile()) {
+			return null;
+		}
+
+		CachedSlice slice = null;
+		try {
+			CachedSlice e = readEntry(entry);
+			if (FORMAT_VERSION.equals(e.version) && classes.matches(e.dependencies)) {
+				slice = e;
+			}
+		} catch (IOException | NumberFormatException e) {
+			System.err.println("corrupted cache entry: " + entry);
+		}
+
+		if (slice == null) {
+			// stale or corrupted
+			entry.delete();
+			return null;
+		}
+		// mark as recently used
+		entry.setLastModified(System.currentTimeMillis());
+		return slice;
+	}
+
+	/*
+	 * analysis describes the analysis that computed the slice, dependencies are the hashes of the
+	 * classes it depends on. texts are the texts of the lines as they are written (see
+	 * SliceWriter), or null if the slice has no source.
+	 */
+	public synchronized void store(String key, String jarPath, BitSet lines, Map<Integer, String> texts,
+			String analysis, Map<String, String> dependencies) throws IOException {
+		StringBuilder deps = new StringBuilder();
+		for (Map.Entry<String, String> entry : dependencies.entrySet()) {
+			if (deps.length() > 0) {
+				deps.append(';');
+			}
+			deps.append(entry.getKey() + ":" + entry.getValue());
+		}
+
+		StringBuilder sb = new StringBuilder();
+		for (int line = lines.nextSetBit(0); line >= 0; line = lines.nextSetBit(line + 1)) {
+			if (sb.length() > 0) {
+				sb.append(',');
+			}
+			sb.append(line);
+		}
+
+		// write to a temporary file first, so that readers never see a partial entry
+		File tmp = File.createTempFile(key, ".tmp", cacheDir);
+		try (BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), CHARSET)) {
+			writer.write("version=" + FORMAT_VERSION + "\n");
+			writer.write("jar=" + jarPath + "\n");
+			writer.write("dependencies=" + deps.toString() + "\n");
+			writer.write("analysis=" + analysis + "\n");
+			writer.write("lines=" + sb.toString() + "\n");
+			if (texts != null) {
+				writer.write("source=true\n");
+				for (Map.Entry<Integer, String> text : texts.entrySet()) {
+					writer.write("text." + text.getKey() + "=" + text.getValue() + "\n");
+				}
+			}
+		}
+		File entry = entryFile(key);
+		entry.delete();
+		if (!tmp.renameTo(entry)) {
+			tmp.delete();
+			throw new IOException("can't write cache entry: " + entry);
+		}
+
+		enforceSizeCap();
+	}
+
+	// removes the entries that were written in an older format
+	private void evictOldFormats() {
+		for (File entry : listEntries()) {
+			try {
+				CachedSlice e = readEntry(entry);
+				if (!FORMAT_VERSION.equals(e.version)) {
+					entry.delete();
+				}
+			} catch (IOException | NumberFormatException e) {
+				entry.delete();
+			}
+		}
+	}
+
+	private void enforceSizeCap() {
+		List<File> entries = listEntries();
+		long total = 0;
+		for (File entry : entries) {
+			total += entry.length();
+		}
+		if (total <= maxBytes) {
+			return;
+		}
+
+		// least recently used first
+		Collections.sort(entries, new Comparator<File>() {
+			@Override
+			public int compare(File f1, File f2) {
+				return Long.compare(f1.lastModified(), f2.lastModified());
+			}
+		});
+		for (File entry : entries) {
+			if (total <= maxBytes) {
+				break;
+			}
+			long size = entry.length();
+			if (entry.delete()) {
+				total -= size;
+			}
+		}
+	}
+
+	private List<File> listEntries() {
+		File[] files = cacheDir.listFiles();
+		List<File> entries = new ArrayList<File>();
+		if (files == null) {
+			return entries;
+		}
+		for (File f : Arrays.asList(files)) {
+			if (f.isFile() && f.getName().endsWith(ENTRY_SUFFIX)) {
+				entries.add(f);
+			}
+		}
+		return entries;
+	}
+
+	public static class CachedSlice {
+		String version;
+		String jarPath;
+		String analysis;
+		// class name to hash
+		Map<String, String> dependencies = new HashMap<String, String>();
+		BitSet lines = new BitSet();
+		// the texts of the lines that are written, null if the slice has no source
+		Map<Integer, String> texts;
+
+		public BitSet getLines() {
+			return lines;
+		}
+
+		public Map<Integer, String> getTexts() {
+			return texts;
+		}
+
+		public String getAnalysis() {
+			return analysis;
+		}
+	}
+
+	private static CachedSlice readEntry(File file) throws IOException {
+		CachedSlice e = new CachedSlice();
+		try (BufferedReader br = Files.newBufferedReader(file.toPath(), CHARSET)) {
+			String line;
+			while ((line = br.readLine()) != null) {
+				int sep = line.indexOf('=');
+				if (sep < 0) {
+					continue;
+				}
+				String name = line.substring(0, sep);
+				String value = line.substring(sep + 1);
+				if (name.equals("version")) {
+					e.version = value;
+				} else if (name.equals("jar")) {
+					e.jarPath = value;
+				} else if (name.equals("dependencies") && !value.isEmpty()) {
+					for (String dep : value.split(";")) {
+						int colon = dep.lastIndexOf(':');
+						e.dependencies.put(dep.substring(0, colon), dep.substring(colon + 1));
+					}
+				} else if (name.equals("analysis")) {
+					e.analysis = value;
+				} else if (name.equals("lines") && !value.isEmpty()) {
+					for (String num : value.split(",")) {
+						e.lines.set(Integer.parseInt(num));
+					}
+				} else if (name.equals("source")) {
+					e.texts = new TreeMap<Integer, String>();
+				} else if (name.startsWith("text.") && e.texts != null) {
+					e.texts.put(Integer.parseInt(name.substring("text.".length())), value);
+				}
+			}
+		}
+		return e;
+	}
+}
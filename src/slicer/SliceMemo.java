@@ -0,0 +1,111 @@
+package slicer;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ibm.wala.ipa.slicer.Statement;
+
+/*
+ * A bounded memo of the backward slices (closures) of single seed statements, by the seed and
+ * the dependence options of the SDG they were computed over. A seed is a statement - an
+ * instruction (by its index) of a call graph node. The slices of many queries over the same
+ * analysis share most of their seeds (the branches and the function end of a method are the
+ * same for all of its flags), so the slices of the seeds that were sliced before are composed
+ * from their closures, and only the other seeds are sliced (see MultiSeedSlicer). A closure is
+ * the slice of its seed computed alone, never a part of a slice of several seeds, so what the
+ * memo returns doesn't depend on the queries that filled it.
+ * The memo is weighed by the number of statements of its closures, and the least recently used
+ * closures are evicted once the weight is above the maximum. The hits and misses are counted,
+ * to tune the maximum weight by.
+ * A closure is valid for the call graph it was computed over, so a memo belongs to a single
+ * analysis. It is shared by the threads slicing over that analysis.
+ */
+public class SliceMemo {
+	public static final long DEFAULT_MAX_WEIGHT = 1000000;
+
+	private static class Key {
+		Statement seed;
+		String options;
+
+		Key(Statement seed, String options) {
+			this.seed = seed;
+			this.options = options;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) o;
+			return seed.equals(other.seed) && options.equals(other.options);
+		}
+
+		@Override
+		public int hashCode() {
+			return seed.hashCode() * 31 + options.hashCode();
+		}
+	}
+
+	long maxWeight;
+	long weight;
+	long hits;
+	long misses;
+	// in access order, so that the eldest closure is the least recently used
+	Map<Key, Statement[]> closures = new LinkedHashMap<Key, Statement[]>(16, 0.75f, true);
+
+	public SliceMemo(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	public synchronized void setMaxWeight(long maxWeight) {
+		this.maxWeight = maxWeight;
+		evict();
+	}
+
+	// the closure of the seed, or null if it isn't in the memo
+	public synchronized Statement[] get(Statement seed, String options) {
+		Statement[] closure = closures.get(new Key(seed, options));
+		if (closure == null) {
+			++misses;
+		} else {
+			++hits;
+		}
+		return closure;
+	}
+
+	public synchronized void put(Statement seed, String options, Collection<Statement> closure) {
+		// a closure that is heavier than the whole memo would only evict everything else
+		if (closure.size() > maxWeight) {
+			return;
+		}
+		Statement[] previous = closures.put(new Key(seed, options), closure.toArray(new Statement[closure.size()]));
+		if (previous != null) {
+			weight -= previous.length;
+		}
+		weight += closure.size();
+		evict();
+	}
+
+	private void evict() {
+		for (Iterator<Statement[]> it = closures.values().iterator(); weight > maxWeight && it.hasNext();) {
+			weight -= it.next().length;
+			it.remove();
+		}
+	}
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	// the number of statements in the closures of the memo
+	public synchronized long getWeight() {
+		return weight;
+	}
+}
@@ -0,0 +1,206 @@
+package slicer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Measures the phases of a slice - their wall time, CPU time, allocated bytes and peak heap -
+ * and counts the sizes of what the slice was computed over (call graph nodes and edges,
+ * seeds, statements of the slice). The metrics are written next to the slice output, as
+ * JSON (<output>.metrics.json) and as Prometheus text (<output>.prom).
+ * CPU time and allocation are those of the thread that ran the phase, and allocation is only
+ * measured where the JVM supports it (-1 otherwise). The peak heap of a phase is the sum of
+ * the peaks of the heap pools while it ran. The peaks are reset JVM-wide at the start of every
+ * phase, so the peak heap is only valid when a single query runs at a time: it is measured
+ * only if setMeasureHeap turned it on, and the slicers that run concurrently (ParallelSlicer)
+ * turn it off (it is -1 then).
+ */
+public class SliceMetrics {
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	// a phase being measured, from its creation until it is closed
+	public class Phase implements AutoCloseable {
+		String name;
+		long wallNanos;
+		long cpuNanos = -1;
+		long allocatedBytes = -1;
+		long peakHeapBytes = -1;
+		private long startWall;
+		private long startCpu;
+		private long startAllocated;
+
+		Phase(String name) {
+			this.name = name;
+			if (measureHeap) {
+				resetHeapPeaks();
+			}
+			startCpu = getCpuTime();
+			startAllocated = getAllocatedBytes();
+			startWall = System.nanoTime();
+		}
+
+		@Override
+		public void close() {
+			wallNanos = System.nanoTime() - startWall;
+			long cpu = getCpuTime();
+			if (cpu != -1 && startCpu != -1) {
+				cpuNanos = cpu - startCpu;
+			}
+			long allocated = getAllocatedBytes();
+			if (allocated != -1 && startAllocated != -1) {
+				allocatedBytes = allocated - startAllocated;
+			}
+			if (measureHeap) {
+				peakHeapBytes = getHeapPeak();
+			}
+			phases.add(this);
+		}
+	}
+
+	List<Phase> phases = new ArrayList<Phase>();
+	Map<String, Long> counters = new LinkedHashMap<String, Long>();
+	boolean measureHeap;
+
+	// starts measuring a phase, which ends when it is closed
+	public Phase phase(String name) {
+		return new Phase(name);
+	}
+
+	// only for a slice that no other slice runs concurrently with
+	public void setMeasureHeap(boolean measure) {
+		measureHeap = measure;
+	}
+
+	public void count(String name, long value) {
+		counters.put(name, value);
+	}
+
+	private static long getCpuTime() {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : -1;
+	}
+
+	private static long getAllocatedBytes() {
+		if (THREADS instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+			if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+				return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+	private static void resetHeapPeaks() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private static long getHeapPeak() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	// writes the metrics next to the slice output, labels name the slice (e.g. method and flag)
+	public void write(String outputPath, Map<String, String> labels) throws IOException {
+		try (Writer writer = Files.newBufferedWriter(Paths.get(outputPath + ".metrics.json"), StandardCharsets.UTF_8)) {
+			writer.write(toJson(labels));
+		}
+		try (Writer writer = Files.newBufferedWriter(Paths.get(outputPath + ".prom"), StandardCharsets.UTF_8)) {
+			writer.write(toPrometheus(labels));
+		}
+	}
+
+	String toJson(Map<String, String> labels) {
+		StringBuilder sb = new StringBuilder("{\n  \"labels\": {");
+		String sep = "";
+		for (Map.Entry<String, String> label : labels.entrySet()) {
+			sb.append(sep + SliceServer.quote(label.getKey()) + ": " + SliceServer.quote(label.getValue()));
+			sep = ", ";
+		}
+		sb.append("},\n  \"phases\": [");
+		sep = "\n";
+		for (Phase phase : phases) {
+			sb.append(sep + "    {\"name\": " + SliceServer.quote(phase.name) + ", \"wallNanos\": " + phase.wallNanos +
+					", \"cpuNanos\": " + phase.cpuNanos + ", \"allocatedBytes\": " + phase.allocatedBytes +
+					", \"peakHeapBytes\": " + phase.peakHeapBytes + "}");
+			sep = ",\n";
+		}
+		sb.append("\n  ],\n  \"counters\": {");
+		sep = "";
+		for (Map.Entry<String, Long> counter : counters.entrySet()) {
+			sb.append(sep + SliceServer.quote(counter.getKey()) + ": " + counter.getValue());
+			sep = ", ";
+		}
+		return sb.append("}\n}\n").toString();
+	}
+
+	String toPrometheus(Map<String, String> labels) {
+		StringBuilder common = new StringBuilder();
+		for (Map.Entry<String, String> label : labels.entrySet()) {
+			common.append(label.getKey() + "=\"" + escapeLabel(label.getValue()) + "\",");
+		}
+
+		StringBuilder sb = new StringBuilder();
+		appendPhaseMetric(sb, common, "flagslicer_phase_wall_seconds", "Wall time of the phase", 0);
+		appendPhaseMetric(sb, common, "flagslicer_phase_cpu_seconds", "CPU time of the thread that ran the phase", 1);
+		appendPhaseMetric(sb, common, "flagslicer_phase_allocated_bytes", "Bytes allocated by the thread that ran the phase", 2);
+		appendPhaseMetric(sb, common, "flagslicer_phase_peak_heap_bytes", "Peak heap while the phase ran", 3);
+		String counterLabels = common.length() == 0 ? "" : "{" + common.substring(0, common.length() - 1) + "}";
+		for (Map.Entry<String, Long> counter : counters.entrySet()) {
+			String name = "flagslicer_" + toSnakeCase(counter.getKey());
+			sb.append("# TYPE " + name + " gauge\n");
+			sb.append(name + counterLabels + " " + counter.getValue() + "\n");
+		}
+		return sb.toString();
+	}
+
+	// metric 0 is the wall time, 1 the CPU time, 2 the allocated bytes and 3 the peak heap
+	private void appendPhaseMetric(StringBuilder sb, StringBuilder labels, String name, String help, int metric) {
+		sb.append("# HELP " + name + " " + help + "\n");
+		sb.append("# TYPE " + name + " gauge\n");
+		for (Phase phase : phases) {
+			long value = metric == 0 ? phase.wallNanos : metric == 1 ? phase.cpuNanos :
+					metric == 2 ? phase.allocatedBytes : phase.peakHeapBytes;
+			if (value == -1) {
+				// not measured on this JVM
+				continue;
+			}
+			String text = metric < 2 ? String.valueOf(value / 1e9) : String.valueOf(value);
+			sb.append(name + "{" + labels + "phase=\"" + escapeLabel(phase.name) + "\"} " + text + "\n");
+		}
+	}
+
+	private static String escapeLabel(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static String toSnakeCase(String name) {
+		StringBuilder sb = new StringBuilder();
+		for (char c : name.toCharArray()) {
+			if (Character.isUpperCase(c)) {
+				sb.append('_').append(Character.toLowerCase(c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,534 @@
+package slicer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.github.javaparser.ParseException;
+import com.ibm.wala.ipa.cha.ClassHierarchyException;
+import com.ibm.wala.util.CancelException;
+
+/*
+ * Serves slice requests from a long running JVM, so that requests don't pay for the JVM
+ * startup, the loading of WALA and the primordial scope, and the building of the analysis.
+ * The server listens on a TCP port of the loopback interface. Every line a client sends is
+ * a request - a flat JSON object with the fields of a query:
+ *   {"token": ..., "jarPath": ..., "jarFileName": ..., "fileName": ..., "packageName": ...,
+ *    "className": ..., "methodName": ..., "flagName": ..., "outputPath": (optional),
+ *    "local": (optional), "bytecode": (optional), "tier": (optional)}
+ * and it is answered by a single line:
+ *   {"status": "ok", "slice": ...} or {"status": "error", "message": ...}
+ * The request {"token": ..., "command": "stop"} stops the server.
+ * Any local process can connect to the port, so every request must carry the token the server
+ * writes to its token file when it starts, which only the user running the server can read.
+ * A request may only write its output under the output directory of the server, given as a
+ * path relative to it; without an output directory the slices are only returned.
+ * At most maxClients clients are served at once, and as many wait for a thread; the clients
+ * beyond them are turned away.
+ * The preprocessed classes and the analyses built over them stay resident, and the least
+ * recently used ones are evicted (and their analyses closed) once there are more than
+ * maxAnalyses of them. A class is
+ * resident once per jar and analysis settings: the methods of all its requests are
+ * preprocessed into one overlay (as in a batch), so their requests share an analysis.
+ * Clients are served concurrently; the requests of a class are preprocessed and sliced one at
+ * a time. With a memory budget, which bounds the whole heap, all the requests are sliced one
+ * at a time.
+ */
+public class SliceServer {
+	// a preprocessed class and the analysis built over it
+	private static class Resident {
+		// the methods preprocessed into the overlay, and the helpers they got
+		Map<String, String> methodHelpers = new LinkedHashMap<String, String>();
+		ClassOverlay overlay;
+		// null if the class was instrumented in bytecode
+		JavaCodeTransformer codeTrs;
+		SliceAnalysis analysis;
+		// evicted from the residents, and its analysis closed
+		boolean evicted;
+	}
+
+	public static final int DEFAULT_MAX_CLIENTS = 8;
+
+	int port;
+	File tokenFile;
+	// the token of the requests, generated when the server starts
+	byte[] token;
+	// null if requests may not write their output
+	Path outputDir;
+	SliceCache cache;
+	boolean localMode;
+	File primordialSnapshot;
+	CallGraphTier maxTier = CallGraphTier.DEFAULT;
+	long timeBudgetMillis;
+	long heapBudgetBytes;
+	long memoWeight = SliceMemo.DEFAULT_MAX_WEIGHT;
+	long memoryBudgetBytes;
+	Map<String, Resident> residents;
+	// the residents evicted from the map, whose analyses weren't closed yet (guarded by residents)
+	List<Resident> evictedResidents = new ArrayList<Resident>();
+	ThreadPoolExecutor pool;
+	ServerSocket serverSocket;
+	// held by every slice when there is a memory budget
+	private final Object budgetLock = new Object();
+
+	public SliceServer(int port, File tokenFile, final int maxAnalyses, int maxClients, SliceCache cache) {
+		this.port = port;
+		this.tokenFile = tokenFile;
+		this.cache = cache;
+		this.pool = new ThreadPoolExecutor(maxClients, maxClients, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(maxClients));
+		this.residents = new LinkedHashMap<String, Resident>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Resident> eldest) {
+				if (size() > maxAnalyses) {
+					evictedResidents.add(eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	// the defaults of the requests that don't set them
+	public void setLocalMode(boolean local) {
+		localMode = local;
+	}
+
+	public void setPrimordialSnapshot(File snapshot) {
+		primordialSnapshot = snapshot;
+	}
+
+	public void setPrecision(CallGraphTier tier, long timeBudget, long heapBudget) {
+		maxTier = tier;
+		timeBudgetMillis = timeBudget;
+		heapBudgetBytes = heapBudget;
+	}
+
+	public void setMemoWeight(long weight) {
+		memoWeight = weight;
+	}
+
+	public void setMemoryBudget(long budgetBytes) {
+		memoryBudgetBytes = budgetBytes;
+	}
+
+	// the directory the requests write their outputs under (it must exist)
+	public void setOutputDirectory(File dir) throws IOException {
+		outputDir = dir.toPath().toRealPath();
+	}
+
+	// serves clients until a stop request is received
+	public void serve() throws IOException {
+		token = writeToken(tokenFile);
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		FlagSlicer.progress("slicing server listening on " + serverSocket.getLocalSocketAddress() + 
+				", its token is in " + tokenFile);
+		try {
+			while (true) {
+				final Socket client;
+				try {
+					client = serverSocket.accept();
+				} catch (SocketException e) {
+					// the server socket was closed by a stop request
+					break;
+				}
+				try {
+					pool.execute(new Runnable() {
+						@Override
+						public void run() {
+							serveClient(client);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					turnAway(client);
+				}
+			}
+		} finally {
+			pool.shutdown();
+			tokenFile.delete();
+		}
+	}
+
+	/*
+	 * Writes a new random token to the file, which is created readable by its owner alone (the
+	 * file is replaced, so a file planted with other permissions isn't reused).
+	 */
+	static byte[] writeToken(File file) throws IOException {
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		StringBuilder sb = new StringBuilder();
+		for (byte b : random) {
+			sb.append(String.format("%02x", b & 0xff));
+		}
+		byte[] token = sb.toString().getBytes(StandardCharsets.UTF_8);
+
+		Path path = file.toPath();
+		Files.deleteIfExists(path);
+		if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(path);
+			file.setReadable(false, false);
+			file.setWritable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(true, true);
+		}
+		Files.write(path, token);
+		return token;
+	}
+
+	private static void turnAway(Socket client) {
+		try (Socket socket = client;
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			out.write(error("the server is busy") + "\n");
+		} catch (IOException e) {
+			System.err.println("client connection failed: " + e.getMessage());
+		}
+	}
+
+	private void stop() throws IOException {
+		serverSocket.close();
+	}
+
+	private void serveClient(Socket client) {
+		try (Socket socket = client;
+				BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+				Writer out = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.trim().isEmpty()) {
+					continue;
+				}
+				out.write(handleRequest(line) + "\n");
+				out.flush();
+			}
+		} catch (IOException e) {
+			System.err.println("client connection failed: " + e.getMessage());
+		}
+	}
+
+	private String handleRequest(String line) {
+		try {
+			Map<String, String> request = parseRequest(line);
+			if (!isAuthorized(request)) {
+				return error("the request doesn't carry the token of the server");
+			}
+			if ("stop".equals(request.get("command"))) {
+				stop();
+				return "{\"status\": \"ok\", \"slice\": \"\"}";
+			}
+			return "{\"status\": \"ok\", \"slice\": " + quote(slice(request)) + "}";
+		} catch (IOException | ParseException | ClassHierarchyException | CancelException e) {
+			return error(e);
+		} catch (RuntimeException e) {
+			// a failed request shouldn't bring the server down
+			e.printStackTrace();
+			return error(e);
+		}
+	}
+
+	private static String error(Exception e) {
+		return error(String.valueOf(e.getMessage()));
+	}
+
+	private static String error(String message) {
+		return "{\"status\": \"error\", \"message\": " + quote(message) + "}";
+	}
+
+	private boolean isAuthorized(Map<String, String> request) {
+		String requestToken = request.get("token");
+		// compared in constant time, so the token can't be guessed from the time of the answers
+		return requestToken != null && MessageDigest.isEqual(token, requestToken.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/*
+	 * The output path of a request, which must be relative to the output directory and stay
+	 * under it, also through links, once it is resolved. Its directory must exist.
+	 */
+	static String resolveOutput(Path outputDir, String outputPath) throws IOException {
+		if (outputDir == null) {
+			throw new IllegalArgumentException("the server has no output directory, so requests can't write an output");
+		}
+		Path path = FileSystems.getDefault().getPath(outputPath);
+		Path resolved = outputDir.resolve(path).normalize();
+		if (path.isAbsolute() || !resolved.startsWith(outputDir) || resolved.equals(outputDir) ||
+				!resolved.getParent().toRealPath().startsWith(outputDir)) {
+			throw new IllegalArgumentException("the output path must be under the output directory: " + outputPath);
+		}
+		if (Files.isSymbolicLink(resolved)) {
+			throw new IllegalArgumentException("the output path is a link: " + outputPath);
+		}
+		return resolved.toString();
+	}
+
+	private String slice(Map<String, String> request) throws IOException, ParseException, ClassHierarchyException,
+			CancelException {
+		FlagSlicer slicer = new FlagSlicer(required(request, "jarPath"), required(request, "jarFileName"),
+				required(request, "fileName"), required(request, "packageName"), required(request, "className"),
+				required(request, "methodName"), required(request, "flagName"),
+				request.containsKey("outputPath") ? resolveOutput(outputDir, request.get("outputPath")) : null);
+		slicer.setCache(cache);
+		slicer.setPrimordialSnapshot(primordialSnapshot);
+		slicer.setLocalMode(request.containsKey("local") ? Boolean.parseBoolean(request.get("local")) : localMode);
+		slicer.setPrecision(request.containsKey("tier") ? CallGraphTier.fromName(request.get("tier")) : maxTier,
+				timeBudgetMillis, heapBudgetBytes);
+		slicer.setMemoWeight(memoWeight);
+		slicer.setMemoryBudget(memoryBudgetBytes);
+		boolean bytecode = Boolean.parseBoolean(request.get("bytecode"));
+
+		if (memoryBudgetBytes > 0) {
+			synchronized (budgetLock) {
+				return slice(slicer, bytecode);
+			}
+		}
+		return slice(slicer, bytecode);
+	}
+
+	private String slice(FlagSlicer slicer, boolean bytecode) throws IOException, ParseException,
+			ClassHierarchyException, CancelException {
+		while (true) {
+			Resident resident = getResident(slicer, bytecode);
+			// a resident is built under its own lock, so the requests of other classes aren't held up
+			synchronized (resident) {
+				// the resident was evicted while the request waited for it
+				if (resident.evicted) {
+					continue;
+				}
+				return slice(resident, slicer, bytecode);
+			}
+		}
+	}
+
+	private String slice(Resident resident, FlagSlicer slicer, boolean bytecode) throws IOException, ParseException,
+			ClassHierarchyException, CancelException {
+		preprocess(resident, slicer, bytecode);
+		slicer.setBytecodeMode(bytecode);
+		slicer.setPreprocessedMethods(resident.methodHelpers.keySet());
+		slicer.setAnalysis(resident.analysis);
+		Map<String, BitSet> slices;
+		try {
+			slices = slicer.computeSlice(resident.overlay);
+		} finally {
+			// keep the analysis if this request built it
+			resident.analysis = slicer.analysis;
+		}
+		if (slicer.outputSlicePath != null) {
+			slicer.writeResult(resident.codeTrs, slices);
+		}
+		return slicer.getSliceText(resident.codeTrs, slices);
+	}
+
+	// the resident entry of the query's class, which is created empty if it isn't resident
+	private Resident getResident(FlagSlicer slicer, boolean bytecode) {
+		File jar = new File(slicer.jarPath, slicer.jarName);
+		// a jar that changed on disk gets a new resident entry, and the old one is evicted in time
+		String key = slicer.jarPath + "|" + slicer.jarName + "|" + jar.lastModified() + "|" + jar.length() + "|" +
+				slicer.fileName + "|" + slicer.packageName + "|" + slicer.className + "|" + bytecode + "|" +
+				slicer.getAnalysisMode();
+		Resident resident;
+		List<Resident> evicted;
+		synchronized (residents) {
+			resident = residents.get(key);
+			if (resident == null) {
+				resident = new Resident();
+				residents.put(key, resident);
+			}
+			evicted = new ArrayList<Resident>(evictedResidents);
+			evictedResidents.clear();
+		}
+		// closed outside the map lock, once the requests that use them are done
+		for (Resident old : evicted) {
+			synchronized (old) {
+				old.evicted = true;
+				SliceAnalysis.close(old.analysis);
+				old.analysis = null;
+			}
+		}
+		return resident;
+	}
+
+	/*
+	 * Preprocesses the query's method into the resident class, unless it is there already. The
+	 * class is preprocessed again with all its methods, and the analysis built over the old
+	 * overlay is dropped. The method gets the helper of the first flag it was requested with.
+	 */
+	private void preprocess(Resident resident, FlagSlicer slicer, boolean bytecode) throws IOException, ParseException {
+		if (resident.methodHelpers.containsKey(slicer.methodName)) {
+			return;
+		}
+		Map<String, String> methodHelpers = new LinkedHashMap<String, String>(resident.methodHelpers);
+		methodHelpers.put(slicer.methodName, FlagSlicer.helperName(slicer.flagName));
+		// the resident is left as it was if the method can't be preprocessed
+		JavaCodeTransformer codeTrs = null;
+		ClassOverlay overlay;
+		if (bytecode) {
+			overlay = new BytecodeInstrumenter().instrument(slicer.jarPath, FlagSlicer.removeExtension(slicer.jarName),
+					FlagSlicer.removeExtension(slicer.fileName), slicer.packageName, slicer.className,
+					methodHelpers.keySet());
+		} else {
+			codeTrs = new JavaCodeTransformer();
+			overlay = codeTrs.Preprocess(slicer.jarPath, FlagSlicer.removeExtension(slicer.jarName),
+					FlagSlicer.removeExtension(slicer.fileName), slicer.className, methodHelpers);
+		}
+		resident.methodHelpers = methodHelpers;
+		resident.overlay = overlay;
+		resident.codeTrs = codeTrs;
+		SliceAnalysis.close(resident.analysis);
+		resident.analysis = null;
+	}
+
+	private static String required(Map<String, String> request, String field) {
+		String value = request.get(field);
+		if (value == null) {
+			throw new IllegalArgumentException("missing field: " + field);
+		}
+		return value;
+	}
+
+	/*
+	 * Parses a flat JSON object - its values are strings, numbers, booleans or null - into
+	 * a map of the values as strings (null values are omitted).
+	 */
+	static Map<String, String> parseRequest(String json) {
+		Map<String, String> fields = new HashMap<String, String>();
+		int[] pos = { skipSpaces(json, 0) };
+		expect(json, pos, '{');
+		if (peek(json, pos) == '}') {
+			return fields;
+		}
+		while (true) {
+			String name = parseString(json, pos);
+			expect(json, pos, ':');
+			String value;
+			if (peek(json, pos) == '"') {
+				value = parseString(json, pos);
+			} else {
+				// a number, true, false or null
+				int start = pos[0];
+				while (pos[0] < json.length() && ",} \t\r\n".indexOf(json.charAt(pos[0])) == -1) {
+					++pos[0];
+				}
+				value = json.substring(start, pos[0]);
+				if (value.isEmpty()) {
+					throw new IllegalArgumentException("missing value of " + name);
+				}
+				if (value.equals("null")) {
+					value = null;
+				}
+			}
+			if (value != null) {
+				fields.put(name, value);
+			}
+			if (peek(json, pos) == ',') {
+				expect(json, pos, ',');
+				continue;
+			}
+			expect(json, pos, '}');
+			return fields;
+		}
+	}
+
+	private static int skipSpaces(String json, int i) {
+		while (i < json.length() && Character.isWhitespace(json.charAt(i))) {
+			++i;
+		}
+		return i;
+	}
+
+	private static char peek(String json, int[] pos) {
+		pos[0] = skipSpaces(json, pos[0]);
+		if (pos[0] >= json.length()) {
+			throw new IllegalArgumentException("unexpected end of request");
+		}
+		return json.charAt(pos[0]);
+	}
+
+	private static void expect(String json, int[] pos, char c) {
+		if (peek(json, pos) != c) {
+			throw new IllegalArgumentException("expected '" + c + "' at " + pos[0] + " of the request");
+		}
+		++pos[0];
+	}
+
+	private static String parseString(String json, int[] pos) {
+		expect(json, pos, '"');
+		StringBuilder sb = new StringBuilder();
+		while (pos[0] < json.length()) {
+			char c = json.charAt(pos[0]++);
+			if (c == '"') {
+				return sb.toString();
+			}
+			if (c != '\\') {
+				sb.append(c);
+				continue;
+			}
+			if (pos[0] >= json.length()) {
+				break;
+			}
+			char escaped = json.charAt(pos[0]++);
+			switch (escaped) {
+			case 'n': sb.append('\n'); break;
+			case 'r': sb.append('\r'); break;
+			case 't': sb.append('\t'); break;
+			case 'b': sb.append('\b'); break;
+			case 'f': sb.append('\f'); break;
+			case 'u':
+				if (pos[0] + 4 > json.length()) {
+					throw new IllegalArgumentException("bad unicode escape in the request");
+				}
+				sb.append((char) Integer.parseInt(json.substring(pos[0], pos[0] + 4), 16));
+				pos[0] += 4;
+				break;
+			default: sb.append(escaped);
+			}
+		}
+		throw new IllegalArgumentException("unterminated string in the request");
+	}
+
+	static String quote(String s) {
+		StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append(String.format("\\u%04x", (int) c));
+				} else {
+					sb.append(c);
+				}
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
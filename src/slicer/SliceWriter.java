@@ -0,0 +1,78 @@
+package slicer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Map;
+
+/*
+ * Writes slices as text in a single pass: a header per slice, followed by its lines with
+ * their source. The lines are streamed to the output as they are formatted, so a slice is
+ * never held in memory as a whole, and the written file is never read back.
+ * The source lines that preprocessing added flag helpers to are written as they were before
+ * the helpers were added (see JavaCodeTransformer.getHelperLines) - a line that held nothing
+ * but a helper is left out. The same map gives the texts of the lines of a cached slice,
+ * which is written without its source.
+ */
+public class SliceWriter implements AutoCloseable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	Writer out;
+	// null if the jar has no source, then only line numbers are written
+	SourceLines source;
+	// the texts of source lines (1-based) that replace the source, e.g. the lines that held
+	// helpers without them (null for lines that are left out)
+	Map<Integer, String> helperLines;
+
+	public SliceWriter(Writer out, SourceLines source, Map<Integer, String> helperLines) {
+		this.out = out;
+		this.source = source;
+		this.helperLines = helperLines == null ? Collections.<Integer, String>emptyMap() : helperLines;
+	}
+
+	// writes to the file (replacing it) through a buffered channel
+	public static SliceWriter open(Path path, SourceLines source, Map<Integer, String> helperLines) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+				StandardOpenOption.WRITE);
+		Writer writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+				BUFFER_SIZE);
+		return new SliceWriter(writer, source, helperLines);
+	}
+
+	public void writeHeader(String header) throws IOException {
+		out.write(header);
+		out.write('\n');
+	}
+
+	// writes the line with the given note after its number, unless it isn't in the source
+	public void writeLine(int lineNum, String note) throws IOException {
+		String text;
+		if (helperLines.containsKey(lineNum)) {
+			text = helperLines.get(lineNum);
+			if (text == null) {
+				return;
+			}
+		} else if (source == null) {
+			out.write("line " + lineNum + note + "\n");
+			return;
+		} else if (lineNum < 1 || lineNum > source.size()) {
+			return;
+		} else {
+			text = source.get(lineNum - 1);
+		}
+		out.write("line " + lineNum + note + ": ");
+		out.write(text);
+		out.write('\n');
+	}
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+}
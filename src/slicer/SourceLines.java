@@ -0,0 +1,72 @@
+package slicer;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * The lines of a source file, over a single buffer holding the decoded text.
+ * Only the offsets at which the lines start are indexed - a line's String is created when
+ * it is asked for. Lines end at "\n", "\r" or "\r\n", like BufferedReader.readLine().
+ */
+public class SourceLines {
+	private final CharBuffer text;
+	// lineStarts[i] is the offset of line i
+	private int[] lineStarts;
+	private int lineCount;
+
+	public SourceLines(byte[] bytes, Charset charset) {
+		text = charset.decode(ByteBuffer.wrap(bytes));
+		lineStarts = new int[16];
+		index();
+	}
+
+	private void index() {
+		int length = text.limit();
+		int start = 0;
+		int i = 0;
+		while (i < length) {
+			char c = text.get(i++);
+			if (c == '\n' || c == '\r') {
+				if (c == '\r' && i < length && text.get(i) == '\n') {
+					++i;
+				}
+				addLine(start);
+				start = i;
+			}
+		}
+		if (start < length) {
+			// a last line without a line terminator
+			addLine(start);
+		}
+	}
+
+	private void addLine(int start) {
+		if (lineCount == lineStarts.length) {
+			lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+		}
+		lineStarts[lineCount++] = start;
+	}
+
+	public int size() {
+		return lineCount;
+	}
+
+	// returns line i (0-based) without its line terminator
+	public String get(int i) {
+		if (i < 0 || i >= lineCount) {
+			throw new IndexOutOfBoundsException("line " + i + " of " + lineCount);
+		}
+		return text.subSequence(lineStarts[i], lineEnd(i)).toString();
+	}
+
+	private int lineEnd(int i) {
+		int end = i + 1 < lineCount ? lineStarts[i + 1] : text.limit();
+		// skip back over the terminator of the line
+		while (end > lineStarts[i] && (text.get(end - 1) == '\n' || text.get(end - 1) == '\r')) {
+			--end;
+		}
+		return end;
+	}
+}
@@ -0,0 +1,141 @@
+package slicer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.JarFile;
+
+import org.junit.Test;
+
+public class FlagIndexTest {
+	// relative to the root of the repository, which the tests run from
+	private static final String EXAMPLE_DIR = "src/example";
+
+	private static FlagIndex.Flag flag(String className, String methodName, String flagName, boolean overloaded) {
+		FlagIndex.Flag flag = new FlagIndex.Flag();
+		flag.className = className;
+		flag.sourceFile = "Test.java";
+		flag.methodName = methodName;
+		flag.descriptor = "(IZ)Z";
+		flag.overloaded = overloaded;
+		flag.flagName = flagName;
+		flag.parameter = 1;
+		flag.branchIndices = new int[] { 17, 68 };
+		flag.branchLines = new int[] { 11, -1 };
+		return flag;
+	}
+
+	@Test
+	public void parsesWhatItWrites() throws IOException {
+		FlagIndex.Flag flag = flag("example/Test", "foo", "flag", true);
+		FlagIndex.Flag parsed = FlagIndex.Flag.parse(flag.toString());
+		assertEquals(flag.toString(), parsed.toString());
+		assertEquals("example/Test", parsed.className);
+		assertEquals("Test.java", parsed.sourceFile);
+		assertEquals("foo", parsed.methodName);
+		assertEquals("(IZ)Z", parsed.descriptor);
+		assertTrue(parsed.overloaded);
+		assertEquals("flag", parsed.flagName);
+		assertEquals(1, parsed.parameter);
+		assertArrayEquals(new int[] { 17, 68 }, parsed.branchIndices);
+		assertArrayEquals(new int[] { 11, -1 }, parsed.branchLines);
+	}
+
+	@Test(expected = IOException.class)
+	public void rejectsAMalformedFlag() throws IOException {
+		FlagIndex.Flag.parse("example/Test\tTest.java\tfoo\tflag");
+	}
+
+	@Test
+	public void namesTheClassOfTheQuery() {
+		FlagIndex.Flag flag = flag("example/inner/Test", "foo", "flag", false);
+		assertEquals("example.inner", flag.getPackageName());
+		assertEquals("Test", flag.getSimpleClassName());
+		assertEquals("", flag("Test", "foo", "flag", false).getPackageName());
+	}
+
+	@Test
+	public void leavesUnqueryableFlagsOutOfTheManifest() throws IOException {
+		FlagIndex index = new FlagIndex();
+		index.flags.add(flag("example/Test", "foo", "flag", false));
+		index.flags.add(flag("example/Test", "bar", "parameter 1", false));
+		index.flags.add(flag("example/Test", "baz", "flag", true));
+		index.flags.add(flag("example/Test$Inner", "foo", "flag", false));
+		assertNull(index.flags.get(0).getUnqueryableReason());
+
+		StringWriter out = new StringWriter();
+		index.writeManifest(out, "/jars", "test.jar", new File("out"));
+		String[] lines = out.toString().split("\n");
+		assertEquals(5, lines.length);
+		assertEquals("/jars\ttest.jar\tTest.java\texample\tTest\tfoo\tflag\t" +
+				new File("out", "example.Test.foo.flag.slice").getPath(), lines[1]);
+		assertEquals("# example/Test.bar parameter 1: unnamed parameter 1", lines[2]);
+		assertEquals("# example/Test.baz flag: overloaded method (IZ)Z", lines[3]);
+		assertEquals("# example/Test$Inner.foo flag: nested class", lines[4]);
+	}
+
+	@Test
+	public void writesManifestsThatBatchesReadBack() throws IOException {
+		FlagIndex index = new FlagIndex();
+		index.flags.add(flag("example/Test", "foo", "flag", false));
+		File manifest = File.createTempFile("flagslicer-manifest", ".txt");
+		try {
+			try (Writer writer = Files.newBufferedWriter(manifest.toPath(), StandardCharsets.UTF_8)) {
+				index.writeManifest(writer, "/my jars", "test 1.jar", new File("my slices"));
+				// a line without tabs is split at any whitespace
+				writer.write("  /jars test.jar Test.java example Test bar flag out.slice\n");
+			}
+			BatchSlicer batch = new BatchSlicer(null);
+			batch.readManifest(manifest.getPath());
+			assertEquals(2, batch.queries.size());
+			BatchSlicer.Query q = batch.queries.get(0);
+			assertEquals("/my jars", q.jarPath);
+			assertEquals("test 1.jar", q.jarName);
+			assertEquals("foo", q.methodName);
+			assertEquals(new File("my slices", "example.Test.foo.flag.slice").getPath(), q.outputPath);
+			assertEquals("bar", batch.queries.get(1).methodName);
+			assertEquals("out.slice", batch.queries.get(1).outputPath);
+		} finally {
+			manifest.delete();
+		}
+	}
+
+	// the example is compiled with its local variable table, so its flags have names
+	@Test
+	public void findsTheBranchesOfTheExample() throws Exception {
+		ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+		try (JarFile jar = new JarFile(new File(EXAMPLE_DIR, "test.jar"));
+				InputStream in = jar.getInputStream(jar.getEntry("example/Test.class"))) {
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				classBytes.write(buffer, 0, read);
+			}
+		}
+		List<FlagIndex.Flag> flags = FlagIndex.scanClass(classBytes.toByteArray());
+		// getFlag returns its flag without branching on it
+		assertEquals(1, flags.size());
+		FlagIndex.Flag flag = flags.get(0);
+		assertEquals("example/Test", flag.className);
+		assertEquals("Test.java", flag.sourceFile);
+		assertEquals("foo", flag.methodName);
+		assertEquals("(IZ)Z", flag.descriptor);
+		assertFalse(flag.overloaded);
+		assertEquals("flag", flag.flagName);
+		assertEquals(1, flag.parameter);
+		assertArrayEquals(new int[] { 17, 68 }, flag.branchIndices);
+		assertArrayEquals(new int[] { 11, 19 }, flag.branchLines);
+	}
+}
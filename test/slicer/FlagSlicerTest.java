@@ -0,0 +1,95 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FlagSlicerTest {
+	// relative to the root of the repository, which the tests run from
+	private static final String EXAMPLE_DIR = "src/example";
+	// the slice of flag in example.Test.foo as the original slicer wrote it, without the helpers
+	private static final List<String> EXAMPLE_SLICE = Arrays.asList(
+			"line 11:         int b = 0;",
+			"line 13:             b = a * 2 + cd;",
+			"line 14:             int c = a + b;",
+			"line 15:             System.out.println(\"flag is true \" + c);",
+			"line 16:         } else {",
+			"line 20:             for (int i = 0; i < 10; ++i) {",
+			"line 21:                 System.out.println(i);",
+			"line 24:         b *= 5;",
+			"line 26:         System.out.println(b);");
+
+	private static BitSet lines(int... lineNums) {
+		BitSet lines = new BitSet();
+		for (int line : lineNums) {
+			lines.set(line);
+		}
+		return lines;
+	}
+
+	@Test
+	public void addsTheEndLinesThatShareALine() {
+		BitSet result = lines(11, 12);
+		FlagSlicer.addDependentLines(result, Arrays.asList(lines(12, 25), lines(26, 27)));
+		assertEquals(lines(11, 12, 25), result);
+	}
+
+	// an end statement is checked against the lines added by the statements before it, not after it
+	@Test
+	public void checksTheEndLinesInOrder() {
+		BitSet result = lines(11);
+		FlagSlicer.addDependentLines(result, Arrays.asList(lines(11, 25), lines(25, 26)));
+		assertEquals(lines(11, 25, 26), result);
+
+		result = lines(11);
+		FlagSlicer.addDependentLines(result, Arrays.asList(lines(25, 26), lines(11, 25)));
+		assertEquals(lines(11, 25), result);
+	}
+
+	@Test
+	public void noEndLines() {
+		BitSet result = lines(11);
+		FlagSlicer.addDependentLines(result, Collections.<BitSet>emptyList());
+		assertEquals(lines(11), result);
+	}
+
+	// the lines of the slice of the example, after the header
+	private static List<String> sliceExample(boolean local) throws Exception {
+		File output = File.createTempFile("flagslicer-test", ".txt");
+		try {
+			FlagSlicer slicer = new FlagSlicer(new File(EXAMPLE_DIR).getAbsolutePath(), "test.jar", "Test.java", "example",
+					"Test", "foo", "flag", output.getPath());
+			slicer.setLocalMode(local);
+			slicer.sliceMethod();
+			List<String> lines = Files.readAllLines(output.toPath(), StandardCharsets.UTF_8);
+			assertEquals("Slice for: Test.java ; example.Test.foo; flag name: flag", lines.get(0).split("; analysis:")[0]);
+			return lines.subList(1, lines.size());
+		} finally {
+			output.delete();
+		}
+	}
+
+	@Test
+	public void slicesTheExampleAsTheOriginalSlicer() throws Exception {
+		assertEquals(EXAMPLE_SLICE, sliceExample(false));
+	}
+
+	@Test
+	public void slicesTheExampleLocally() throws Exception {
+		assertEquals(EXAMPLE_SLICE, sliceExample(true));
+	}
+
+	@Test
+	public void namesTheHelperOfTheFlag() {
+		assertEquals("flag_temp", FlagSlicer.helperName("flag"));
+		assertEquals("flags_temp", FlagSlicer.helperName(FlagSlicer.ALL_FLAGS));
+	}
+}
@@ -0,0 +1,114 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseException;
+import com.github.javaparser.ast.CompilationUnit;
+
+public class JavaCodeTransformerTest {
+	private static final String SOURCE =
+			"class Test {\n" +
+			"\tstatic void foo(int cd, boolean flag) {\n" +
+			"\t\tint a = 1, b = cd * 2;\n" +
+			"\t\tString s = \" + flag_temp\";\n" +
+			"\t\tSystem.out.println(a + b);\n" +
+			"\t}\n" +
+			"\tstatic void bar(boolean other) {\n" +
+			"\t\tlong c = 3;\n" +
+			"\t}\n" +
+			"}\n";
+
+	private static final String CHANGED =
+			"class Test {\n" +
+			"\n" +
+			"    static void foo(int cd, boolean flag) {\n" +
+			"        int flag_temp = 0;\n" +
+			"        int a = 1 + flag_temp, b = cd * 2 + flag_temp;\n" +
+			"        String s = \" + flag_temp\";\n" +
+			"        System.out.println(a + b);\n" +
+			"    }\n" +
+			"\n" +
+			"    static void bar(boolean other) {\n" +
+			"        int other_temp = 0;\n" +
+			"        long c = 3 + other_temp;\n" +
+			"    }\n" +
+			"}\n";
+
+	private static CompilationUnit parse(String source) throws ParseException {
+		return JavaParser.parse(new ByteArrayInputStream(source.getBytes(StandardCharsets.UTF_8)),
+				StandardCharsets.UTF_8.name());
+	}
+
+	private static JavaCodeTransformer transform(Map<String, String> methodHelpers, String expected) throws ParseException {
+		JavaCodeTransformer codeTrs = new JavaCodeTransformer();
+		CompilationUnit cu = parse(SOURCE);
+		assertEquals(expected, codeTrs.transform(cu, "Test", methodHelpers));
+		// the changed source is printed as JavaParser prints it
+		assertEquals(cu.toString(), expected);
+		return codeTrs;
+	}
+
+	private static Map<String, String> bothHelpers() {
+		Map<String, String> methodHelpers = new LinkedHashMap<String, String>();
+		methodHelpers.put("foo", "flag_temp");
+		methodHelpers.put("bar", "other_temp");
+		return methodHelpers;
+	}
+
+	@Test
+	public void mapsTheLinesOfTheHelpers() throws Exception {
+		Map<Integer, String> lines = transform(bothHelpers(), CHANGED).getHelperLines();
+		assertEquals(4, lines.size());
+		// the declarations of the helpers are left out
+		assertTrue(lines.containsKey(4));
+		assertNull(lines.get(4));
+		assertTrue(lines.containsKey(11));
+		assertNull(lines.get(11));
+		// the helpers are cut out of the initializers they were added to
+		assertEquals("        int a = 1, b = cd * 2;", lines.get(5));
+		assertEquals("        long c = 3;", lines.get(12));
+	}
+
+	@Test
+	public void keepsTheLinesWithoutHelpers() throws Exception {
+		Map<Integer, String> lines = transform(bothHelpers(), CHANGED).getHelperLines();
+		// the text of a string literal isn't a helper
+		assertFalse(lines.containsKey(6));
+		assertFalse(lines.containsKey(7));
+	}
+
+	@Test
+	public void findsOnlyTheAddedHelpers() throws Exception {
+		Map<String, String> methodHelpers = new LinkedHashMap<String, String>();
+		methodHelpers.put("bar", "other_temp");
+		String changed =
+				"class Test {\n" +
+				"\n" +
+				"    static void foo(int cd, boolean flag) {\n" +
+				"        int a = 1, b = cd * 2;\n" +
+				"        String s = \" + flag_temp\";\n" +
+				"        System.out.println(a + b);\n" +
+				"    }\n" +
+				"\n" +
+				"    static void bar(boolean other) {\n" +
+				"        int other_temp = 0;\n" +
+				"        long c = 3 + other_temp;\n" +
+				"    }\n" +
+				"}\n";
+		Map<Integer, String> lines = transform(methodHelpers, changed).getHelperLines();
+		assertEquals(2, lines.size());
+		assertNull(lines.get(10));
+		assertEquals("        long c = 3;", lines.get(11));
+	}
+}
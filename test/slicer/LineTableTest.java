@@ -0,0 +1,44 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.BitSet;
+
+import org.junit.Test;
+
+public class LineTableTest {
+	private static final LineTable TABLE = new LineTable(new int[] { 5, LineTable.NO_LINE, 7, 5 });
+
+	@Test
+	public void linesByInstruction() {
+		assertEquals(5, TABLE.getLine(0));
+		assertEquals(LineTable.NO_LINE, TABLE.getLine(1));
+		assertEquals(7, TABLE.getLine(2));
+	}
+
+	@Test
+	public void instructionsOutOfRangeHaveNoLine() {
+		assertEquals(LineTable.NO_LINE, TABLE.getLine(-1));
+		assertEquals(LineTable.NO_LINE, TABLE.getLine(4));
+		assertEquals(LineTable.NO_LINE, LineTable.EMPTY.getLine(0));
+	}
+
+	@Test
+	public void addsTheLinesOfInstructions() {
+		BitSet instructions = new BitSet();
+		instructions.set(1);
+		instructions.set(2);
+		instructions.set(3);
+		// beyond the end of the table
+		instructions.set(10);
+		BitSet lines = new BitSet();
+		lines.set(1);
+		TABLE.addLines(instructions, lines);
+
+		BitSet expected = new BitSet();
+		expected.set(1);
+		expected.set(5);
+		expected.set(7);
+		assertEquals(expected, lines);
+	}
+}
@@ -0,0 +1,107 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.ibm.wala.ipa.callgraph.CGNode;
+import com.ibm.wala.ipa.slicer.NormalStatement;
+import com.ibm.wala.ipa.slicer.SDG;
+import com.ibm.wala.ipa.slicer.Slicer;
+import com.ibm.wala.ipa.slicer.Statement;
+import com.ibm.wala.ssa.SSAInstruction;
+import com.ibm.wala.util.strings.Atom;
+
+/*
+ * Checks the slices of MultiSeedSlicer against the slices WALA computes for every seed alone,
+ * over the SDG of example.Test.foo as FlagSlicer builds it. The seeds are all the instructions
+ * of foo, so they include the branches on the flag and the function end that FlagSlicer seeds.
+ */
+public class MultiSeedSlicerTest {
+	// relative to the root of the repository, which the tests run from
+	private static final String EXAMPLE_DIR = "src/example";
+
+	@SuppressWarnings("rawtypes")
+	static SDG sdg;
+	static List<Statement> seeds = new ArrayList<Statement>();
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		String jarPath = new File(EXAMPLE_DIR).getAbsolutePath();
+		FlagSlicer slicer = new FlagSlicer(jarPath, "test.jar", "Test.java", "example", "Test", "foo", "flag", null);
+		ClassOverlay preprocessed = new JavaCodeTransformer().Preprocess(jarPath, "test", "Test", "Test", "foo", "flag",
+				FlagSlicer.helperName("flag"));
+		slicer.computeSlice(preprocessed);
+		SliceAnalysis analysis = slicer.getAnalysis();
+		sdg = analysis.getSDG(FlagSlicer.DATA_OPTIONS, FlagSlicer.CONTROL_OPTIONS);
+
+		CGNode node = FlagSlicer.findMethod(analysis.getCallGraph(), Atom.findOrCreateUnicodeAtom("foo"));
+		SSAInstruction[] instructions = node.getIR().getInstructions();
+		for (int i = 0; i < instructions.length; ++i) {
+			if (instructions[i] != null) {
+				seeds.add(new NormalStatement(node, i));
+			}
+		}
+		// a seed that appears twice
+		seeds.add(seeds.get(0));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Set<Statement> sliceAlone(Statement seed) throws Exception {
+		Set<Statement> slice = new HashSet<Statement>(Slicer.computeBackwardSlice(sdg, Collections.singleton(seed)));
+		slice.add(seed);
+		return slice;
+	}
+
+	@Test
+	public void slicesEverySeedAsWalaDoes() throws Exception {
+		MultiSeedSlicer.SliceResult result = new MultiSeedSlicer(sdg).computeBackwardSlice(seeds);
+		Set<Statement> union = new HashSet<Statement>();
+		for (int i = 0; i < seeds.size(); ++i) {
+			Set<Statement> expected = sliceAlone(seeds.get(i));
+			assertEquals("slice of " + seeds.get(i), expected, new HashSet<Statement>(result.getSlice(i)));
+			union.addAll(expected);
+		}
+		assertEquals(union, new HashSet<Statement>(result.getSlice()));
+	}
+
+	@Test
+	public void attributesStatementsOnlyToTheSeedsThatReachThem() throws Exception {
+		MultiSeedSlicer.SliceResult result = new MultiSeedSlicer(sdg).computeBackwardSlice(seeds);
+		for (int i = 0; i < seeds.size(); ++i) {
+			Set<Statement> expected = sliceAlone(seeds.get(i));
+			for (Statement s : result.getSlice()) {
+				assertEquals(s + " in the slice of " + seeds.get(i), expected.contains(s), result.getReachingSeeds(s).get(i));
+			}
+		}
+	}
+
+	@Test
+	public void composesTheSameSlicesFromTheMemo() throws Exception {
+		SliceMemo memo = new SliceMemo(SliceMemo.DEFAULT_MAX_WEIGHT);
+		String options = FlagSlicer.DATA_OPTIONS + "," + FlagSlicer.CONTROL_OPTIONS;
+		MultiSeedSlicer.SliceResult computed = new MultiSeedSlicer(sdg, memo, options).computeBackwardSlice(seeds);
+		assertTrue(memo.getMisses() > 0);
+
+		// in reverse order, so the seeds are composed in an order they weren't computed in
+		List<Statement> reversed = new ArrayList<Statement>(seeds);
+		Collections.reverse(reversed);
+		long misses = memo.getMisses();
+		MultiSeedSlicer.SliceResult composed = new MultiSeedSlicer(sdg, memo, options).computeBackwardSlice(reversed);
+		assertEquals(misses, memo.getMisses());
+		assertTrue(memo.getHits() > 0);
+		for (int i = 0; i < seeds.size(); ++i) {
+			assertEquals(new HashSet<Statement>(computed.getSlice(i)),
+					new HashSet<Statement>(composed.getSlice(seeds.size() - 1 - i)));
+		}
+	}
+}
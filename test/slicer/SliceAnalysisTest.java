@@ -0,0 +1,66 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SliceAnalysisTest {
+	File dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("flagslicer-analysis-test").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
+	// a jar of the given compilation units (e.g. a/Main.java)
+	private File writeJar(Map<String, String> sources) throws IOException {
+		File jar = new File(dir, "test.jar");
+		Map<String, byte[]> classes = new InMemoryCompiler().compile(sources, null);
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				out.putNextEntry(new ZipEntry(entry.getKey().replace('.', '/') + ".class"));
+				out.write(entry.getValue());
+				out.closeEntry();
+			}
+		}
+		return jar;
+	}
+
+	@Test
+	public void dependsOnTheSupertypesAndSubtypesOfTheCallGraph() throws Exception {
+		Map<String, String> sources = new LinkedHashMap<String, String>();
+		sources.put("a/Main.java", "package a; public class Main { public static void main(String[] args) { new Base().m(); } }");
+		sources.put("a/Root.java", "package a; public class Root { }");
+		sources.put("a/Api.java", "package a; public interface Api { void m(); }");
+		sources.put("a/Base.java", "package a; public class Base extends Root implements Api { public void m() { } }");
+		// never instantiated, so none of its methods is in the call graph
+		sources.put("a/Sub.java", "package a; public class Sub extends Base { public void m() { } }");
+		sources.put("a/Other.java", "package a; public class Other { }");
+		File jar = writeJar(sources);
+
+		SliceAnalysis analysis = new SliceAnalysis(jar.getPath(), FlagSlicer.getExclusionsFile(), "La/Main");
+		assertEquals(new HashSet<String>(Arrays.asList("a/Main", "a/Root", "a/Api", "a/Base", "a/Sub")),
+				analysis.getDependentClasses());
+	}
+}
@@ -0,0 +1,153 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SliceCacheTest {
+	File dir;
+	File jar;
+	SliceCache cache;
+	// the time the jar was last written, which a rewrite moves ahead (file times may be coarse)
+	long jarTime = 1000000000000L;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("flagslicer-cache-test").toFile();
+		jar = new File(dir, "test.jar");
+		writeJar("a", "b");
+		cache = new SliceCache(new File(dir, "cache"), SliceCache.DEFAULT_MAX_BYTES);
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	// a jar of the classes example/A and example/B with the given contents, and of extra classes
+	private void writeJar(String a, String b, String... extraClasses) throws IOException {
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			putEntry(out, "example/A.class", a);
+			putEntry(out, "example/B.class", b);
+			for (String name : extraClasses) {
+				putEntry(out, name + ".class", name);
+			}
+		}
+		jarTime += 10000;
+		assertTrue(jar.setLastModified(jarTime));
+	}
+
+	private static void putEntry(JarOutputStream out, String name, String content) throws IOException {
+		out.putNextEntry(new ZipEntry(name));
+		out.write(content.getBytes(StandardCharsets.UTF_8));
+		out.closeEntry();
+	}
+
+	private static BitSet lines(int... lineNums) {
+		BitSet lines = new BitSet();
+		for (int line : lineNums) {
+			lines.set(line);
+		}
+		return lines;
+	}
+
+	private String key() {
+		return cache.makeKey("source 1234", "exclusions", "Lexample/A", "foo", "flag", "full");
+	}
+
+	// stores a slice that depends on example/A
+	private void store() throws IOException {
+		Map<Integer, String> texts = new TreeMap<Integer, String>();
+		texts.put(3, "\tint a = 1;");
+		texts.put(7, "\treturn a;");
+		cache.store(key(), jar.getPath(), lines(3, 7), texts, "local",
+				cache.getClassHashes(jar).select(Arrays.asList("example/A")));
+	}
+
+	@Test
+	public void hitsTheStoredSlice() throws IOException {
+		store();
+		SliceCache.CachedSlice cached = cache.lookup(key(), cache.getClassHashes(jar));
+		assertNotNull(cached);
+		assertEquals(lines(3, 7), cached.getLines());
+		assertEquals("\treturn a;", cached.getTexts().get(7));
+		assertEquals("local", cached.getAnalysis());
+	}
+
+	@Test
+	public void missesAnotherKey() throws IOException {
+		store();
+		String other = cache.makeKey("source 1234", "exclusions", "Lexample/A", "foo", "other", "full");
+		assertNull(cache.lookup(other, cache.getClassHashes(jar)));
+	}
+
+	@Test
+	public void keepsTheSliceWhenAnotherClassChanges() throws IOException {
+		store();
+		writeJar("a", "b changed");
+		assertNotNull(cache.lookup(key(), cache.getClassHashes(jar)));
+	}
+
+	@Test
+	public void invalidatesTheSliceWhenItsClassChanges() throws IOException {
+		store();
+		writeJar("a changed", "b");
+		assertNull(cache.lookup(key(), cache.getClassHashes(jar)));
+		// the stale entry is removed
+		writeJar("a", "b");
+		assertNull(cache.lookup(key(), cache.getClassHashes(jar)));
+	}
+
+	@Test
+	public void invalidatesTheSliceWhenAClassIsAdded() throws IOException {
+		store();
+		writeJar("a", "b", "example/C");
+		assertNull(cache.lookup(key(), cache.getClassHashes(jar)));
+	}
+
+	@Test
+	public void reusesTheHashesOfAnUnchangedJar() throws IOException {
+		ClassHashes hashes = cache.getClassHashes(jar);
+		assertTrue(hashes == cache.getClassHashes(jar));
+		writeJar("a changed", "b");
+		assertFalse(hashes.isCurrent(jar));
+		assertFalse(hashes == cache.getClassHashes(jar));
+	}
+
+	@Test
+	public void storesSlicesWithoutSource() throws IOException {
+		cache.store(key(), jar.getPath(), lines(5), null, "full",
+				cache.getClassHashes(jar).select(Arrays.asList("example/A")));
+		SliceCache.CachedSlice cached = cache.lookup(key(), cache.getClassHashes(jar));
+		assertEquals(lines(5), cached.getLines());
+		assertNull(cached.getTexts());
+	}
+}
@@ -0,0 +1,148 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SliceServerTest {
+	Path dir;
+
+	@Before
+	public void setUp() throws IOException {
+		dir = Files.createTempDirectory("flagslicer-server-test").toRealPath();
+	}
+
+	@After
+	public void tearDown() {
+		delete(dir.toFile());
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void writesATokenOnlyItsOwnerCanRead() throws IOException {
+		File file = dir.resolve("token").toFile();
+		Files.write(file.toPath(), "planted".getBytes(StandardCharsets.UTF_8));
+		byte[] token = SliceServer.writeToken(file);
+		assertEquals(64, token.length);
+		assertEquals(new String(token, StandardCharsets.UTF_8),
+				new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+		assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+				Files.getPosixFilePermissions(file.toPath()));
+		assertFalse(new String(token, StandardCharsets.UTF_8).equals(
+				new String(SliceServer.writeToken(file), StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void resolvesOutputsUnderTheOutputDirectory() throws IOException {
+		Files.createDirectory(dir.resolve("sub"));
+		assertEquals(dir.resolve("out.txt").toString(), SliceServer.resolveOutput(dir, "out.txt"));
+		assertEquals(dir.resolve("sub/out.txt").toString(), SliceServer.resolveOutput(dir, "sub/../sub/./out.txt"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOutputsWithoutAnOutputDirectory() throws IOException {
+		SliceServer.resolveOutput(null, "out.txt");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAbsoluteOutputs() throws IOException {
+		SliceServer.resolveOutput(dir, dir.resolve("out.txt").toString());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOutputsOutsideTheOutputDirectory() throws IOException {
+		SliceServer.resolveOutput(dir, "../out.txt");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsOutputsThroughALink() throws IOException {
+		Path outside = Files.createTempDirectory("flagslicer-server-outside");
+		try {
+			Files.createSymbolicLink(dir.resolve("link"), outside);
+			SliceServer.resolveOutput(dir, "link/out.txt");
+		} finally {
+			Files.delete(outside);
+		}
+	}
+
+	@Test
+	public void parsesTheFieldsAsStrings() {
+		Map<String, String> request = SliceServer.parseRequest(
+				" { \"jarPath\" : \"/tmp/a b\", \"local\": true, \"tier\":\"rta\" ,\"port\": 42, \"outputPath\": null } ");
+		assertEquals(4, request.size());
+		assertEquals("/tmp/a b", request.get("jarPath"));
+		assertEquals("true", request.get("local"));
+		assertEquals("rta", request.get("tier"));
+		assertEquals("42", request.get("port"));
+		assertFalse(request.containsKey("outputPath"));
+	}
+
+	@Test
+	public void parsesAnEmptyObject() {
+		assertTrue(SliceServer.parseRequest("{}").isEmpty());
+		assertTrue(SliceServer.parseRequest(" {\t} ").isEmpty());
+	}
+
+	@Test
+	public void unescapesStrings() {
+		Map<String, String> request = SliceServer.parseRequest(
+				"{\"path\": \"C:\\\\dir\\\\\\\"x\\\"\", \"lines\": \"a\\nb\\tc\", \"unicode\": \"\\u00e9\\/\"}");
+		assertEquals("C:\\dir\\\"x\"", request.get("path"));
+		assertEquals("a\nb\tc", request.get("lines"));
+		assertEquals("\u00e9/", request.get("unicode"));
+	}
+
+	@Test
+	public void quotesForTheParser() {
+		String value = "line 1: \"a\" \\ b\nline 2:\t\r\u0001";
+		assertEquals("\"line 1: \\\"a\\\" \\\\ b\\nline 2:\\t\\r\\u0001\"", SliceServer.quote(value));
+		assertEquals(value, SliceServer.parseRequest("{\"slice\": " + SliceServer.quote(value) + "}").get("slice"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnUnterminatedObject() {
+		SliceServer.parseRequest("{\"jarPath\": \"a\"");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnUnterminatedString() {
+		SliceServer.parseRequest("{\"jarPath\": \"a}");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAMissingValue() {
+		SliceServer.parseRequest("{\"jarPath\": , \"b\": 1}");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsABadUnicodeEscape() {
+		SliceServer.parseRequest("{\"a\": \"\\u12\"}");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnythingButAnObject() {
+		SliceServer.parseRequest("[1, 2]");
+	}
+}
@@ -0,0 +1,73 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SliceWriterTest {
+	private static final String SOURCE = "class A {\n\tvoid f() {\n\t\tint flag_temp = 0;\n\t\tint a = 1 + flag_temp;\n\t}\n}";
+
+	private static SourceLines source() {
+		return new SourceLines(SOURCE.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void writesTheSourceOfTheLines() throws IOException {
+		StringWriter out = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(out, source(), null)) {
+			writer.writeHeader("slice");
+			writer.writeLine(2, "");
+			writer.writeLine(6, " (end)");
+		}
+		assertEquals("slice\nline 2: \tvoid f() {\nline 6 (end): }\n", out.toString());
+	}
+
+	@Test
+	public void writesHelperLinesWithoutTheHelpers() throws IOException {
+		Map<Integer, String> helperLines = new HashMap<Integer, String>();
+		helperLines.put(3, null);
+		helperLines.put(4, "\t\tint a = 1;");
+		StringWriter out = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(out, source(), helperLines)) {
+			writer.writeLine(3, "");
+			writer.writeLine(4, "");
+		}
+		assertEquals("line 4: \t\tint a = 1;\n", out.toString());
+	}
+
+	@Test
+	public void skipsLinesOutsideTheSource() throws IOException {
+		StringWriter out = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(out, source(), null)) {
+			writer.writeLine(0, "");
+			writer.writeLine(7, "");
+		}
+		assertEquals("", out.toString());
+	}
+
+	@Test
+	public void writesLineNumbersWithoutSource() throws IOException {
+		StringWriter out = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(out, null, null)) {
+			writer.writeLine(12, "");
+		}
+		assertEquals("line 12\n", out.toString());
+	}
+
+	@Test
+	public void writesCachedTextsWithoutSource() throws IOException {
+		Map<Integer, String> texts = new HashMap<Integer, String>();
+		texts.put(12, "\treturn b;");
+		StringWriter out = new StringWriter();
+		try (SliceWriter writer = new SliceWriter(out, null, texts)) {
+			writer.writeLine(12, "");
+		}
+		assertEquals("line 12: \treturn b;\n", out.toString());
+	}
+}
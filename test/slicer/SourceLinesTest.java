@@ -0,0 +1,57 @@
+package slicer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+public class SourceLinesTest {
+	private static SourceLines lines(String text) {
+		return new SourceLines(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void splitsAtEveryLineTerminator() {
+		SourceLines source = lines("a\nb\r\nc\rd");
+		assertEquals(4, source.size());
+		assertEquals("a", source.get(0));
+		assertEquals("b", source.get(1));
+		assertEquals("c", source.get(2));
+		assertEquals("d", source.get(3));
+	}
+
+	@Test
+	public void keepsEmptyLines() {
+		SourceLines source = lines("a\n\n\r\n\nb\n");
+		assertEquals(5, source.size());
+		assertEquals("", source.get(1));
+		assertEquals("", source.get(2));
+		assertEquals("", source.get(3));
+		assertEquals("b", source.get(4));
+	}
+
+	@Test
+	public void lastLineWithoutTerminator() {
+		SourceLines source = lines("first\nlast");
+		assertEquals(2, source.size());
+		assertEquals("last", source.get(1));
+	}
+
+	@Test
+	public void emptyText() {
+		assertEquals(0, lines("").size());
+	}
+
+	@Test
+	public void decodesTheCharset() {
+		SourceLines source = lines("אב\né");
+		assertEquals("אב", source.get(0));
+		assertEquals("é", source.get(1));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void lineOutOfRange() {
+		lines("a\nb\n").get(2);
+	}
+}